@@ -0,0 +1,78 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measure adding the results of many classes to a container,
+ * including the NOC and Ca updates of the classes they refer to,
+ * and printing the container's metrics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ContainerBenchmark {
+    /** Number of classes added */
+    @Param({"1000", "100000"})
+    public int classes;
+
+    /** Number of classes each class is coupled to */
+    private static final int COUPLINGS = 10;
+
+    /** The results of the classes */
+    private ClassResult[] results;
+
+    @Setup
+    public void setup() {
+        results = new ClassResult[classes];
+        for (int i = 0; i < classes; i++) {
+            String[] efferent = new String[COUPLINGS];
+            for (int j = 0; j < COUPLINGS; j++)
+                efferent[j] = className((i * 31 + j * 7919) % classes);
+            results[i] = new ClassResult(className(i), className(i / 4), i % 3 != 0,
+                    i % 20, i % 10, i % 50, i % 5, efferent);
+        }
+    }
+
+    /** Return the name of the synthetic class with the specified number. */
+    private static String className(int i) {
+        return "gr.example.pkg" + (i % 100) + ".Class" + i;
+    }
+
+    @Benchmark
+    public ClassMetricsContainer addResults() {
+        ClassMetricsContainer container = new ClassMetricsContainer();
+        for (ClassResult result : results)
+            container.addResult(result, 1);
+        return container;
+    }
+
+    @Benchmark
+    public void addAndPrintResults(Blackhole blackhole) {
+        addResults().printMetrics((name, metrics) -> blackhole.consume(metrics.toString()), true);
+    }
+}
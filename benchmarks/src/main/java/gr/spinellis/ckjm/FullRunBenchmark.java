@@ -0,0 +1,62 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measure a complete analysis of a large jar file, from reading
+ * the archive to producing the output.
+ * By default the bundled BCEL jar is analyzed; run the benchmarks
+ * from the project's root directory, or pass another jar through
+ * the jar parameter (-p jar=...).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FullRunBenchmark {
+    /** The jar file analyzed */
+    @Param({"lib/bcel-6.8.1.jar"})
+    public String jar;
+
+    /** Number of worker threads */
+    @Param({"1", "4"})
+    public int threads;
+
+    @Benchmark
+    public void analyzeJar(Blackhole blackhole) {
+        AnalysisSession session = new AnalysisSession();
+        session.setThreads(threads);
+        session.processClasses(Collections.singletonList(jar));
+        session.printMetrics((name, metrics) -> blackhole.consume(metrics.toString()));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measure the LCOM calculation for synthetic classes with many
+ * methods, each using a few of the class's fields.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LcomBenchmark {
+    /** Number of methods of the class */
+    @Param({"10", "100", "1000"})
+    public int methods;
+
+    /** Number of fields of the class */
+    @Param({"20", "200"})
+    public int fields;
+
+    /** Number of fields used by each method */
+    private static final int FIELDS_PER_METHOD = 3;
+
+    /** The fields used by each method */
+    private List<BitSet> methodFieldUsage;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        methodFieldUsage = new ArrayList<BitSet>();
+        for (int i = 0; i < methods; i++) {
+            BitSet used = new BitSet();
+            for (int j = 0; j < FIELDS_PER_METHOD; j++)
+                used.set(random.nextInt(fields));
+            methodFieldUsage.add(used);
+        }
+    }
+
+    @Benchmark
+    public int calculateLCOM() {
+        return ClassVisitor.calculateLCOM(methodFieldUsage);
+    }
+}
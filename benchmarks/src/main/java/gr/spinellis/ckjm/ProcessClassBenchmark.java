@@ -0,0 +1,76 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Measure the loading, parsing, and visiting of a single class file.
+ * The class analyzed is ckjm's own ClassVisitor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProcessClassBenchmark {
+    /** The class file analyzed */
+    private File classFile;
+    /** The contents of the class file */
+    private byte[] classBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        classFile = File.createTempFile("ClassVisitor", ".class");
+        try (InputStream in = ClassVisitor.class.getResourceAsStream("ClassVisitor.class")) {
+            Files.copy(in, classFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        classBytes = Files.readAllBytes(classFile.toPath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        classFile.delete();
+    }
+
+    /** Process the class through its file name, as the command does. */
+    @Benchmark
+    public ClassMetricsContainer processClass() {
+        AnalysisSession session = new AnalysisSession();
+        session.processClass(classFile.getPath());
+        return session.getContainer();
+    }
+
+    /** Process the class's contents, without any file I/O. */
+    @Benchmark
+    public ClassMetricsContainer processClassBytes() throws IOException {
+        AnalysisSession session = new AnalysisSession();
+        session.processClassBytes(classBytes, classFile.getName());
+        return session.getContainer();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measure the throughput of the coupling and response set
+ * bookkeeping that the bytecode scanner performs for each
+ * instruction.
+ * Each invocation registers a fixed sequence of references to
+ * classes and methods, many of them repeated, with a new visitor.
+ * As in the bytecode scanner, the keys of invoked methods are
+ * obtained once for each method reference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VisitorBenchmark {
+    /** Number of references registered in each invocation */
+    private static final int REFERENCES = 1024;
+    /** Number of distinct classes referenced */
+    private static final int CLASSES = 64;
+
+    /** The class whose visitor does the bookkeeping */
+    private JavaClass javaClass;
+    /** The session holding the visitor's container */
+    private AnalysisSession session;
+    /** Names of the referenced classes */
+    private String[] classNames = new String[REFERENCES];
+    /** Names of the invoked methods */
+    private String[] methodNames = new String[REFERENCES];
+    /** Descriptors of the invoked methods */
+    private String[] descriptors = new String[REFERENCES];
+    /** Response set keys of the invoked methods */
+    private long[] methodKeys = new long[REFERENCES];
+
+    @Setup
+    public void setup() throws IOException {
+        try (InputStream in = ClassVisitor.class.getResourceAsStream("ClassVisitor.class")) {
+            javaClass = new ClassParser(in, "ClassVisitor.class").parse();
+        }
+        session = new AnalysisSession();
+        String[] signatures = {
+            "()V",
+            "(I)I",
+            "(Ljava/lang/String;Ljava/lang/Object;)Ljava/lang/String;",
+            "([Ljava/lang/String;JZ)V",
+        };
+        ClassVisitor visitor = new ClassVisitor(javaClass, session);
+        for (int i = 0; i < REFERENCES; i++) {
+            classNames[i] = "gr.example.pkg" + (i % 7) + ".Class" + (i % CLASSES);
+            methodNames[i] = "method" + (i % 13);
+            descriptors[i] = signatures[i % signatures.length];
+            methodKeys[i] = visitor.methodKey(classNames[i], methodNames[i], descriptors[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REFERENCES)
+    public ClassVisitor registerCoupling() {
+        ClassVisitor visitor = new ClassVisitor(javaClass, session);
+        for (int i = 0; i < REFERENCES; i++)
+            visitor.registerCoupling(classNames[i]);
+        return visitor;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REFERENCES)
+    public ClassVisitor registerMethodInvocation() {
+        ClassVisitor visitor = new ClassVisitor(javaClass, session);
+        for (int i = 0; i < REFERENCES; i++)
+            visitor.registerMethodInvocation(classNames[i], methodKeys[i]);
+        return visitor;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REFERENCES)
+    public long methodKey() {
+        ClassVisitor visitor = new ClassVisitor(javaClass, session);
+        long sum = 0;
+        for (int i = 0; i < REFERENCES; i++)
+            sum += visitor.methodKey(classNames[i], methodNames[i], descriptors[i]);
+        return sum;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm.maven;
+
+import gr.spinellis.ckjm.AnalysisSession;
+import gr.spinellis.ckjm.PrintPlainResults;
+import gr.spinellis.ckjm.ant.PrintXmlResults;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Combine the partial results written by the analyze goal for the
+ * modules of the build into the metrics of all their classes,
+ * including the NOC and Ca contributed by classes of other modules.
+ * No class is parsed again.
+ * The goal runs once per build, after the modules have been analyzed:
+ * <code>mvn -T 4 process-classes ckjm:aggregate</code>.
+ *
+ * @see AnalyzeMojo
+ */
+@Mojo(name = "aggregate", aggregator = true, threadSafe = true)
+public class AggregateMojo extends AbstractMojo {
+    /** The build */
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    private MavenSession session;
+
+    /** The modules of the build */
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+    private List<MavenProject> reactorProjects;
+
+    /** The file where the metrics are written */
+    @Parameter(property = "ckjm.outputFile", defaultValue = "${project.build.directory}/ckjm.txt", required = true)
+    private File outputFile;
+
+    /** The format of the output file: plain or xml */
+    @Parameter(property = "ckjm.format", defaultValue = "plain")
+    private String format;
+
+    /** True if the measurements take JDK classes into account; must match the analysis */
+    @Parameter(property = "ckjm.includeJdk", defaultValue = "false")
+    private boolean includeJdk;
+
+    /** True if only public classes should be reported */
+    @Parameter(property = "ckjm.onlyPublic", defaultValue = "false")
+    private boolean onlyPublic;
+
+    /** True to skip the aggregation */
+    @Parameter(property = "ckjm.skip", defaultValue = "false")
+    private boolean skip;
+
+    /** Merge the modules' results and write the metrics. */
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping ckjm aggregation");
+            return;
+        }
+        if (!format.equals("plain") && !format.equals("xml"))
+            throw new MojoExecutionException("Unknown format " + format + "; use plain or xml");
+        try {
+            SharedResultCache.saveAll(session);
+        } catch (IOException e) {
+            getLog().warn("Error saving ckjm cache: " + e);
+        }
+
+        List<File> partialFiles = new ArrayList<>();
+        for (MavenProject module : reactorProjects) {
+            File partialFile = new File(module.getBuild().getDirectory(), AnalyzeMojo.PARTIAL_FILE);
+            if (partialFile.exists())
+                partialFiles.add(partialFile);
+            else
+                getLog().debug("No ckjm results for " + module.getId());
+        }
+        if (partialFiles.isEmpty()) {
+            getLog().warn("No ckjm results found; run the analyze goal first");
+            return;
+        }
+
+        outputFile.getAbsoluteFile().getParentFile().mkdirs();
+        try (PrintStream out = new PrintStream(new FileOutputStream(outputFile), false, "UTF-8")) {
+            aggregate(partialFiles, includeJdk, onlyPublic, format.equals("xml"), out);
+            if (out.checkError())
+                throw new IOException("write failed");
+        } catch (IOException e) {
+            throw new MojoExecutionException("Error writing " + outputFile + ": " + e.getMessage(), e);
+        }
+        getLog().info("Wrote the metrics of " + partialFiles.size() + " modules to " + outputFile);
+    }
+
+    /**
+     * Merge the specified partial results files of modules and print
+     * the metrics of their classes to the specified stream.
+     * @param xml True to print XML; false for plain text
+     */
+    static void aggregate(List<File> partialFiles, boolean includeJdk, boolean onlyPublic, boolean xml,
+            PrintStream out) throws MojoExecutionException {
+        AnalysisSession analysis = new AnalysisSession(includeJdk, onlyPublic);
+        for (File partialFile : partialFiles) {
+            try {
+                analysis.mergePartialResults(partialFile);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Error reading " + partialFile + ": " + e.getMessage(), e);
+            }
+        }
+        if (xml) {
+            PrintXmlResults outputXml = new PrintXmlResults(out);
+            outputXml.printHeader();
+            analysis.printMetrics(outputXml);
+            outputXml.printFooter();
+        } else
+            analysis.printMetrics(new PrintPlainResults(out));
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm.maven;
+
+import gr.spinellis.ckjm.AnalysisSession;
+import gr.spinellis.ckjm.HierarchyIndex;
+import gr.spinellis.ckjm.PartialResults;
+import gr.spinellis.ckjm.ResultCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.bcel.util.ClassPath;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Analyze the classes of a module, writing their results to the
+ * module's partial results file.
+ * The superclasses of the classes are looked up in the module's
+ * compile class path, so that each module's depth of inheritance
+ * is complete; the metrics that depend on the classes of other
+ * modules, NOC and Ca, are calculated by the aggregate goal.
+ * The modules can be analyzed concurrently (mvn -T), sharing
+ * a per-class result cache.
+ *
+ * @see AggregateMojo
+ * @see PartialResults
+ */
+@Mojo(name = "analyze", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true,
+    requiresDependencyResolution = ResolutionScope.COMPILE)
+public class AnalyzeMojo extends AbstractMojo {
+    /** Name of the partial results file in a module's build directory */
+    static final String PARTIAL_FILE = "ckjm.partial";
+
+    /** The module being analyzed */
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    /** The build of the module */
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    private MavenSession session;
+
+    /** The modules of the build */
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+    private List<MavenProject> reactorProjects;
+
+    /** The execution of the goal */
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true, required = true)
+    private MojoExecution execution;
+
+    /** The directory of the module's class files */
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File classesDirectory;
+
+    /** The result cache shared by all modules and builds; none if empty */
+    @Parameter(property = "ckjm.cacheFile", defaultValue = "${session.executionRootDirectory}/target/ckjm.cache")
+    private File cacheFile;
+
+    /** True if the measurements should take JDK classes into account */
+    @Parameter(property = "ckjm.includeJdk", defaultValue = "false")
+    private boolean includeJdk;
+
+    /** Number of threads analyzing the module's classes; 0 for one per processor */
+    @Parameter(property = "ckjm.threads", defaultValue = "1")
+    private int threads;
+
+    /** True to skip the analysis */
+    @Parameter(property = "ckjm.skip", defaultValue = "false")
+    private boolean skip;
+
+    /**
+     * Analyze the class files under the specified directory, looking
+     * up their superclasses in the specified class path, and write
+     * their results to the specified partial results file.
+     * @param threads Number of threads; 0 for one per processor
+     * @param cache The result cache to use, or null for none
+     */
+    static void analyze(File classesDirectory, String classPath, File partialFile, boolean includeJdk,
+            int threads, ResultCache cache) throws IOException {
+        AnalysisSession analysis = new AnalysisSession(includeJdk, false, HierarchyIndex.forClassPath(classPath));
+        analysis.setThreads(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        analysis.setResultCache(cache);
+        try (PartialResults partialResults = new PartialResults(partialFile, includeJdk)) {
+            analysis.setPartialResults(partialResults);
+            analysis.processClasses(Collections.singletonList(classesDirectory.getPath()));
+        }
+    }
+
+    /**
+     * Return the number of modules of the build that run the goal:
+     * all of them when it is invoked from the command line, otherwise
+     * those whose build binds it.
+     */
+    static int countModules(List<MavenProject> reactorProjects, MojoExecution execution) {
+        if (execution.getSource() == MojoExecution.Source.CLI)
+            return reactorProjects.size();
+        String key = Plugin.constructKey(execution.getGroupId(), execution.getArtifactId());
+        int modules = 0;
+        for (MavenProject module : reactorProjects) {
+            Plugin plugin = module.getPlugin(key);
+            if (plugin == null)
+                continue;
+            for (PluginExecution pluginExecution : plugin.getExecutions())
+                if (pluginExecution.getGoals().contains(execution.getGoal())) {
+                    modules++;
+                    break;
+                }
+        }
+        return modules;
+    }
+
+    /**
+     * Analyze the module's classes.
+     * Every module running the goal, including those that are skipped
+     * or have no classes, is counted by the shared cache, which is
+     * written once all of them have run.
+     */
+    @Override
+    public void execute() throws MojoExecutionException {
+        SharedResultCache cache = null;
+        if (cacheFile != null && !cacheFile.getPath().isEmpty())
+            cache = SharedResultCache.get(session, cacheFile, includeJdk);
+        try {
+            analyzeModule(cache);
+        } finally {
+            if (cache != null) {
+                try {
+                    cache.analyzed(countModules(reactorProjects, execution));
+                } catch (IOException e) {
+                    getLog().warn("Error saving cache " + cacheFile + ": " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Analyze the module's classes, if any.
+     * @param cache The shared result cache to use, or null for none
+     */
+    private void analyzeModule(SharedResultCache cache) throws MojoExecutionException {
+        File partialFile = new File(project.getBuild().getDirectory(), PARTIAL_FILE);
+        if (skip) {
+            getLog().info("Skipping ckjm analysis");
+            return;
+        }
+        if (!classesDirectory.isDirectory()) {
+            /* Do not aggregate the results of removed classes */
+            partialFile.delete();
+            getLog().debug("No classes to analyze in " + classesDirectory);
+            return;
+        }
+
+        StringBuilder path = new StringBuilder(ClassPath.getClassPath());
+        try {
+            for (String element : project.getCompileClasspathElements())
+                path.append(File.pathSeparatorChar).append(element);
+        } catch (DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException("Cannot obtain the class path of " + project.getId(), e);
+        }
+
+        partialFile.getParentFile().mkdirs();
+        try {
+            analyze(classesDirectory, path.toString(), partialFile, includeJdk, threads,
+                cache == null ? null : cache.getCache());
+        } catch (IOException e) {
+            partialFile.delete();
+            throw new MojoExecutionException("Error writing " + partialFile, e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm.maven;
+
+import gr.spinellis.ckjm.ResultCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * A result cache shared by the analyses of all the modules of a build,
+ * which may run concurrently.
+ * The cache's file is read once per build.
+ * Rewriting it after each module would cost time quadratic in the
+ * number of modules, so it is written when all the modules of the
+ * build have been analyzed, when the metrics are aggregated, and
+ * otherwise at most once per SAVE_INTERVAL.
+ */
+final class SharedResultCache {
+    /** Minimum time in milliseconds between intermediate writes of the cache */
+    private static final long SAVE_INTERVAL = 60 * 1000;
+
+    /** The caches of the current build, by their file */
+    private static final Map<File, SharedResultCache> caches = new HashMap<>();
+    /** The build whose caches are held; plugins can be reused by later builds */
+    private static Object currentBuild;
+
+    /** The cache used by the analyses */
+    private final ResultCache cache;
+    /** True if the results take JDK classes into account */
+    private final boolean includeJdk;
+    /** Number of modules analyzed with the cache */
+    private int analyzed;
+    /** Number of cache misses when the cache was last written */
+    private int savedMisses;
+    /** Time when the cache was last written */
+    private long savedTime = System.currentTimeMillis();
+
+    private SharedResultCache(File file, boolean includeJdk) {
+        cache = new ResultCache(file, includeJdk);
+        cache.setShared(true);
+        this.includeJdk = includeJdk;
+    }
+
+    /**
+     * Return the shared cache stored in the specified file for the
+     * specified build, reading it if it is the build's first use.
+     */
+    static synchronized SharedResultCache get(Object build, File file, boolean includeJdk)
+            throws MojoExecutionException {
+        if (build != currentBuild) {
+            caches.clear();
+            currentBuild = build;
+        }
+        File key = file.getAbsoluteFile();
+        SharedResultCache shared = caches.get(key);
+        if (shared == null) {
+            key.getParentFile().mkdirs();
+            shared = new SharedResultCache(key, includeJdk);
+            caches.put(key, shared);
+        } else if (shared.includeJdk != includeJdk)
+            throw new MojoExecutionException("Cache " + file + " is used with different includeJdk settings");
+        return shared;
+    }
+
+    /** Write all the caches of the specified build that have new results. */
+    static void saveAll(Object build) throws IOException {
+        SharedResultCache[] current;
+        synchronized (SharedResultCache.class) {
+            if (build != currentBuild)
+                return;
+            current = caches.values().toArray(new SharedResultCache[0]);
+        }
+        for (SharedResultCache shared : current)
+            shared.save();
+    }
+
+    /** Return the cache to use in an analysis. */
+    ResultCache getCache() { return cache; }
+
+    /**
+     * Note that a module has run the analysis, even if it had no
+     * classes, and write the cache if it is the last of the specified
+     * number of modules or the cache has not been written for a while.
+     */
+    synchronized void analyzed(int modules) throws IOException {
+        analyzed++;
+        if (analyzed >= modules || System.currentTimeMillis() - savedTime >= SAVE_INTERVAL)
+            save();
+    }
+
+    /** Write the cache if it has obtained new results. */
+    synchronized void save() throws IOException {
+        int misses = cache.getMisses();
+        if (misses == savedMisses)
+            return;
+        cache.save();
+        savedMisses = misses;
+        savedTime = System.currentTimeMillis();
+    }
+}
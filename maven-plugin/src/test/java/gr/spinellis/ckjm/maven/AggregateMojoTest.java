@@ -0,0 +1,39 @@
+package gr.spinellis.ckjm.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gr.spinellis.ckjm.AnalysisSession;
+import gr.spinellis.ckjm.PrintPlainResults;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AggregateMojoTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void modulesMatchSingleRun() throws Exception {
+		ByteArrayOutputStream single = new ByteArrayOutputStream();
+		AnalysisSession session = new AnalysisSession(false, false);
+		session.processClasses(Collections.singletonList(Modules.JAR));
+		session.printMetrics(new PrintPlainResults(new PrintStream(single, true, "UTF-8")));
+
+		Modules modules = new Modules(folder.getRoot());
+		for (int i = 0; i < modules.size(); i++)
+			AnalyzeMojo.analyze(modules.classes.get(i), modules.classPath(i), modules.partialFiles.get(i),
+				false, 2, null);
+		ByteArrayOutputStream aggregated = new ByteArrayOutputStream();
+		AggregateMojo.aggregate(modules.partialFiles, false, false, false, new PrintStream(aggregated, true, "UTF-8"));
+
+		assertTrue(single.size() > 0);
+		assertEquals(single.toString("UTF-8"), aggregated.toString("UTF-8"));
+	}
+}
@@ -0,0 +1,112 @@
+package gr.spinellis.ckjm.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.descriptor.MojoDescriptor;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AnalyzeMojoTest {
+
+	private static final String GROUP_ID = "gr.spinellis";
+	private static final String ARTIFACT_ID = "ckjm-maven-plugin";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Return an execution of the analyze goal from the specified source. */
+	private static MojoExecution execution(MojoExecution.Source source) {
+		PluginDescriptor plugin = new PluginDescriptor();
+		plugin.setGroupId(GROUP_ID);
+		plugin.setArtifactId(ARTIFACT_ID);
+		MojoDescriptor mojo = new MojoDescriptor();
+		mojo.setGoal("analyze");
+		mojo.setPluginDescriptor(plugin);
+		return new MojoExecution(mojo, "default", source);
+	}
+
+	/** Return a module with the specified build directory, optionally binding the analyze goal. */
+	private static MavenProject module(File directory, boolean bound) {
+		Model model = new Model();
+		model.setGroupId("test");
+		model.setArtifactId(directory.getName());
+		model.setVersion("1");
+		Build build = new Build();
+		build.setDirectory(directory.getPath());
+		build.setOutputDirectory(new File(directory, "classes").getPath());
+		if (bound) {
+			Plugin plugin = new Plugin();
+			plugin.setGroupId(GROUP_ID);
+			plugin.setArtifactId(ARTIFACT_ID);
+			PluginExecution execution = new PluginExecution();
+			execution.addGoal("analyze");
+			plugin.addExecution(execution);
+			build.addPlugin(plugin);
+		}
+		model.setBuild(build);
+		return new MavenProject(model);
+	}
+
+	/** Set a parameter of a mojo, as Maven does. */
+	private static void set(Object mojo, String name, Object value) throws Exception {
+		Field field = mojo.getClass().getDeclaredField(name);
+		field.setAccessible(true);
+		field.set(mojo, value);
+	}
+
+	@Test
+	public void modulesRunningGoalAreCounted() throws Exception {
+		List<MavenProject> modules = new ArrayList<>();
+		for (int i = 0; i < 3; i++)
+			modules.add(module(new File(folder.getRoot(), "module" + i), i != 1));
+		assertEquals(2, AnalyzeMojo.countModules(modules, execution(MojoExecution.Source.LIFECYCLE)));
+		assertEquals(3, AnalyzeMojo.countModules(modules, execution(MojoExecution.Source.CLI)));
+	}
+
+	@Test
+	public void cacheIsWrittenAfterModuleWithoutClasses() throws Exception {
+		Modules modules = new Modules(folder.newFolder("modules"));
+		File cacheFile = new File(folder.getRoot(), "ckjm.cache");
+		List<MavenProject> reactorProjects = new ArrayList<>();
+		/* A parent module without classes, built first */
+		reactorProjects.add(module(folder.newFolder("parent"), true));
+		for (File classes : modules.classes)
+			reactorProjects.add(module(classes.getParentFile(), true));
+		MavenSession session = new MavenSession(null, new DefaultMavenExecutionRequest(),
+			new DefaultMavenExecutionResult(), reactorProjects);
+
+		for (MavenProject project : reactorProjects) {
+			assertFalse(cacheFile.exists());
+			AnalyzeMojo mojo = new AnalyzeMojo();
+			set(mojo, "project", project);
+			set(mojo, "session", session);
+			set(mojo, "reactorProjects", reactorProjects);
+			set(mojo, "execution", execution(MojoExecution.Source.LIFECYCLE));
+			set(mojo, "classesDirectory", new File(project.getBuild().getOutputDirectory()));
+			set(mojo, "cacheFile", cacheFile);
+			set(mojo, "threads", 1);
+			mojo.execute();
+		}
+		assertTrue(cacheFile.exists());
+		assertTrue(modules.partialFiles.get(0).exists());
+		assertFalse(new File(reactorProjects.get(0).getBuild().getDirectory(), AnalyzeMojo.PARTIAL_FILE).exists());
+	}
+}
@@ -0,0 +1,64 @@
+package gr.spinellis.ckjm.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.bcel.util.ClassPath;
+
+/** The classes of ckjm's jar, divided among the modules of a build. */
+class Modules {
+
+	static final String JAR = "../test/ckjm-1.8.jar";
+
+	/** The package prefixes of the classes of each module; the last takes the rest */
+	private static final String[] PREFIXES = {
+		"gr/spinellis/ckjm/", "org/apache/bcel/classfile/", "org/apache/bcel/generic/", "org/apache/bcel/verifier/", ""
+	};
+
+	/** The class directory of each module */
+	final List<File> classes = new ArrayList<>();
+	/** The partial results file of each module */
+	final List<File> partialFiles = new ArrayList<>();
+
+	/** Extract the classes of the jar into module directories under the specified one. */
+	Modules(File root) throws IOException {
+		for (int i = 0; i < PREFIXES.length; i++) {
+			classes.add(new File(root, "module" + i + "/classes"));
+			partialFiles.add(new File(root, "module" + i + "/" + AnalyzeMojo.PARTIAL_FILE));
+		}
+		try (ZipFile zip = new ZipFile(JAR)) {
+			for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+				ZipEntry entry = e.nextElement();
+				if (!entry.getName().endsWith(".class"))
+					continue;
+				int module = 0;
+				while (!entry.getName().startsWith(PREFIXES[module]))
+					module++;
+				File file = new File(classes.get(module), entry.getName());
+				file.getParentFile().mkdirs();
+				try (InputStream in = zip.getInputStream(entry)) {
+					Files.copy(in, file.toPath());
+				}
+			}
+		}
+	}
+
+	/** Return the class path of a module, which depends on all the others. */
+	String classPath(int module) {
+		StringBuilder path = new StringBuilder(ClassPath.getClassPath());
+		for (int i = 0; i < classes.size(); i++)
+			if (i != module)
+				path.append(File.pathSeparatorChar).append(classes.get(i).getPath());
+		return path.toString();
+	}
+
+	/** Return the number of modules */
+	int size() { return classes.size(); }
+}
@@ -0,0 +1,81 @@
+package gr.spinellis.ckjm.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedResultCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Analyze all the modules concurrently with the specified build's
+	 * shared cache, as mvn -T does, and return the cache.
+	 */
+	private static SharedResultCache build(Object build, Modules modules, File cacheFile) throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(modules.size());
+		try {
+			List<Future<SharedResultCache>> results = new ArrayList<>();
+			for (int i = 0; i < modules.size(); i++) {
+				final int module = i;
+				results.add(pool.submit((Callable<SharedResultCache>) () -> {
+					SharedResultCache cache = SharedResultCache.get(build, cacheFile, false);
+					AnalyzeMojo.analyze(modules.classes.get(module), modules.classPath(module),
+						modules.partialFiles.get(module), false, 2, cache.getCache());
+					cache.analyzed(modules.size());
+					return cache;
+				}));
+			}
+			SharedResultCache cache = results.get(0).get();
+			for (Future<SharedResultCache> result : results)
+				assertSame(cache, result.get());
+			return cache;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/** Return the aggregated metrics of the modules. */
+	private static String aggregate(Modules modules) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AggregateMojo.aggregate(modules.partialFiles, false, false, false, new PrintStream(out, true, "UTF-8"));
+		return out.toString("UTF-8");
+	}
+
+	@Test
+	public void concurrentModulesShareCache() throws Exception {
+		Modules modules = new Modules(folder.newFolder("modules"));
+		File cacheFile = new File(folder.getRoot(), "ckjm.cache");
+
+		SharedResultCache cold = build(new Object(), modules, cacheFile);
+		String coldMetrics = aggregate(modules);
+		assertEquals(0, cold.getCache().getHits());
+		assertTrue(cold.getCache().getMisses() > 0);
+		/* Written once the last module has been analyzed */
+		assertTrue(cacheFile.exists());
+		long written = cacheFile.lastModified();
+
+		/* A later build reads the cache written by the first one */
+		SharedResultCache warm = build(new Object(), modules, cacheFile);
+		assertEquals(cold.getCache().getMisses(), warm.getCache().getHits());
+		assertEquals(0, warm.getCache().getMisses());
+		assertEquals(coldMetrics, aggregate(modules));
+		/* Nothing new to write */
+		assertEquals(written, cacheFile.lastModified());
+	}
+}
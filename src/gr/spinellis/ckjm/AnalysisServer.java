@@ -0,0 +1,150 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A long-running server of analysis requests.
+ * The server listens on a port of the loopback interface.
+ * Each request consists of lines containing the command line
+ * arguments of an analysis, one per line, such as options and
+ * class specifications, followed by an empty line.
+ * Only the options -s, -p, and -e can be specified; requests
+ * cannot make the server write files.
+ * The response consists of the analysis output, followed by an
+ * empty line; with the -e option the output is sent as it is produced.
+ * An invalid request is answered with a line starting with "error:".
+ * A request consisting of the line "statistics" is answered with
+ * the statistics of the phases of all the analyses served so far,
+ * in the Prometheus text format, so that they can be collected
+ * while the server runs.
+ * A connection can carry any number of requests, and connections
+ * are served concurrently.
+ * <p>
+ * All requests share the server's index of the class hierarchy,
+ * so the superclasses resolved through the class path, typically
+ * those of the JDK and of third-party libraries, are loaded only
+ * once, and the analysis code stays compiled between requests.
+ *
+ * @see MetricsFilter
+ */
+public class AnalysisServer implements Closeable {
+    /** The request for the statistics of the analyses served */
+    static final String STATISTICS_REQUEST = "statistics";
+
+    /** The socket on which requests are accepted */
+    private final ServerSocket serverSocket;
+    /** The index of the class hierarchy shared by all requests */
+    private final HierarchyIndex hierarchyIndex = HierarchyIndex.forSystemClassPath();
+    /** The statistics of all the analyses served */
+    private final AnalysisStatistics statistics = new AnalysisStatistics();
+    /** The threads serving connections */
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+
+    /**
+     * Create a server listening on the specified port of the loopback
+     * interface; port 0 selects any free port.
+     */
+    public AnalysisServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /** Return the port on which the server listens */
+    public int getPort() { return serverSocket.getLocalPort(); }
+
+    /** Accept and serve connections until the server is closed. */
+    public void serve() throws IOException {
+        try {
+            for (;;) {
+                Socket socket = serverSocket.accept();
+                /* Responses are flushed line by line; don't delay them */
+                socket.setTcpNoDelay(true);
+                connections.execute(() -> serveConnection(socket));
+            }
+        } catch (SocketException e) {
+            /* Thrown by accept when the server is closed */
+            if (!serverSocket.isClosed())
+                throw e;
+        }
+    }
+
+    /** Serve the requests of the specified connection until it is closed. */
+    private void serveConnection(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintStream out = new PrintStream(s.getOutputStream(), true, "UTF-8")) {
+            List<String> request;
+            while ((request = readRequest(in)) != null) {
+                try {
+                    if (request.size() == 1 && request.get(0).equals(STATISTICS_REQUEST))
+                        writeStatistics(out);
+                    else
+                        MetricsFilter.analyze(CommandOptions.parseRequest(request), hierarchyIndex, statistics, out);
+                } catch (IllegalArgumentException e) {
+                    out.println("error: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    /* For example, a malformed class file; keep serving the connection */
+                    out.println("error: " + e);
+                }
+                out.println();
+            }
+        } catch (IOException e) {
+            System.err.println("Error serving connection: " + e);
+        }
+    }
+
+    /** Write the statistics of the analyses served to the specified stream. */
+    private void writeStatistics(PrintStream out) throws IOException {
+        StringWriter writer = new StringWriter();
+        statistics.writePrometheus(writer);
+        out.print(writer);
+    }
+
+    /** Return the lines of the next request, or null at the end of the input. */
+    private static List<String> readRequest(BufferedReader in) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = in.readLine()) != null && !line.isEmpty())
+            lines.add(line);
+        return line == null && lines.isEmpty() ? null : lines;
+    }
+
+    /**
+     * Stop accepting connections.
+     * Open connections are served until their clients close them.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        connections.shutdown();
+    }
+}
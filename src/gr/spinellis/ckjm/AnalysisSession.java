@@ -0,0 +1,820 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.util.Repository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * A single metrics analysis.
+ * The session holds the analysis options, the class repository used
+ * for resolving superclasses, and the container of the metrics
+ * of all processed classes.
+ * Sessions share no mutable state, so independent analyses can
+ * run concurrently within the same JVM; sessions can however
+ * share a HierarchyIndex, which can be used concurrently.
+ *
+ * @see MetricsFilter
+ */
+public class AnalysisSession {
+    /** True if the measurements should include calls to the Java JDK into account */
+    private final boolean includeJdk;
+    /** True if the reports should only include public classes */
+    private final boolean onlyPublic;
+    /** The repository used for loading the visited classes' superclasses */
+    private final Repository repository;
+    /** The index of the class hierarchy, used for calculating the DIT */
+    private final HierarchyIndex hierarchyIndex;
+    /** The container where the metrics of all classes are stored */
+    private ClassMetricsContainer classMetricsContainer = new ClassMetricsContainer();
+    /** Number of threads reading the files of a directory */
+    private static final int IO_THREADS = 4;
+    /** Number of directory files read ahead of their processing */
+    static final int PREFETCH = 64;
+    /** The header preceding the zip archive of JMOD files */
+    private static final byte[] JMOD_HEADER = { 'J', 'M', 1, 0 };
+    /** The directory of the classes in JMOD files */
+    private static final String JMOD_CLASSES_DIRECTORY = "classes/";
+    /** The directory of the version-specific classes of multi-release jars */
+    private static final String VERSIONS_DIRECTORY = "META-INF/versions/";
+
+    /** Number of worker threads used for processing classes */
+    private int threads = 1;
+    /** The cache of per-class results, or null if none is used */
+    private ResultCache resultCache;
+    /** The statistics of the analysis, or null if none are kept */
+    private AnalysisStatistics statistics;
+    /** The file where the results are written instead of the container, or null */
+    private PartialResults partialResults;
+    /** The index of the shard of classes processed */
+    private int shardIndex = 0;
+    /** The number of shards among which the classes are divided */
+    private int shardCount = 1;
+    /** The hashes of the processed class files, or null if identical files are processed again */
+    private Set<ContentHash> processedHashes;
+    /** Number of class files skipped as identical to processed ones */
+    private final AtomicInteger duplicates = new AtomicInteger();
+    /** The Java release for which the classes of multi-release jars are selected */
+    private int release = runtimeRelease();
+
+    /** Create a session with the default options. */
+    public AnalysisSession() {
+        this(false, false);
+    }
+
+    /**
+     * Create a session that resolves superclasses through
+     * its own repository of the system class path and,
+     * for the classes of the platform modules, the runtime image.
+     *
+     * @param includeJdk True if JDK classes should be taken into account
+     * @param onlyPublic True if only public classes should be reported
+     */
+    public AnalysisSession(boolean includeJdk, boolean onlyPublic) {
+        this(includeJdk, onlyPublic, HierarchyIndex.forSystemClassPath());
+    }
+
+    /**
+     * Create a session that resolves superclasses through
+     * the specified repository.
+     * The repository should not be shared with other sessions.
+     */
+    public AnalysisSession(boolean includeJdk, boolean onlyPublic, Repository repository) {
+        this(includeJdk, onlyPublic, new HierarchyIndex(repository));
+    }
+
+    /**
+     * Create a session that resolves superclasses through the
+     * specified hierarchy index.
+     * The index can be shared with other sessions, which then reuse
+     * the superclasses it has already resolved.
+     */
+    public AnalysisSession(boolean includeJdk, boolean onlyPublic, HierarchyIndex hierarchyIndex) {
+        this.includeJdk = includeJdk;
+        this.onlyPublic = onlyPublic;
+        this.repository = hierarchyIndex.getRepository();
+        this.hierarchyIndex = hierarchyIndex;
+    }
+
+    /** Return true if the measurements should include calls to the Java JDK into account */
+    public boolean isJdkIncluded() { return includeJdk; }
+    /** Return true if the measurements should include all classes */
+    public boolean includeAll() { return !onlyPublic; }
+    /** Return the repository used for loading superclasses */
+    public Repository getRepository() { return repository; }
+    /** Return the index of the class hierarchy */
+    public HierarchyIndex getHierarchyIndex() { return hierarchyIndex; }
+    /** Return the container of the session's metrics */
+    ClassMetricsContainer getContainer() { return classMetricsContainer; }
+
+    /** Set the number of worker threads used for processing classes */
+    public void setThreads(int threads) { this.threads = threads; }
+    /** Return the number of worker threads used for processing classes */
+    public int getThreads() { return threads; }
+
+    /**
+     * Set the cache of per-class results, through which unchanged
+     * classes are processed without being parsed.
+     * The cache must have been created with the session's includeJdk setting.
+     */
+    public void setResultCache(ResultCache resultCache) { this.resultCache = resultCache; }
+    /** Return the cache of per-class results, or null if none is used */
+    public ResultCache getResultCache() { return resultCache; }
+
+    /**
+     * Keep the memory used for the coupling data of the session's
+     * metrics within about the specified number of bytes, spilling
+     * the couplings beyond it to a temporary file.
+     * Classes that are only referenced are then kept as names alone.
+     * This must be called before any classes are processed.
+     */
+    public void setMemoryBudget(long bytes) {
+        PackageMetricsContainer packageMetrics = classMetricsContainer.getPackageMetrics();
+        classMetricsContainer = new SpillingMetricsContainer(bytes);
+        classMetricsContainer.setPackageMetrics(packageMetrics);
+    }
+
+    /**
+     * Write the results of the processed classes to the specified
+     * partial results file, instead of adding them to the container.
+     * The file must have been created with the session's includeJdk setting.
+     */
+    public void setPartialResults(PartialResults partialResults) { this.partialResults = partialResults; }
+
+    /**
+     * Specify whether the aggregate metrics of the packages of the
+     * processed classes are computed as the classes are added.
+     * The aggregates cover all processed classes, public or not.
+     * This must be called before any classes are processed.
+     */
+    public void setPackageMetrics(boolean compute) {
+        classMetricsContainer.setPackageMetrics(compute ? new PackageMetricsContainer() : null);
+    }
+
+    /**
+     * Return the aggregate metrics of the packages of the processed
+     * classes, ordered by package name, or null if they are not computed.
+     * The unnamed package has an empty name.
+     */
+    public SortedMap<String, PackageMetrics> getPackageMetrics() {
+        PackageMetricsContainer packageMetrics = classMetricsContainer.getPackageMetrics();
+        return packageMetrics == null ? null : packageMetrics.getPackages();
+    }
+
+    /**
+     * Process only the classes of the specified shard.
+     * The class files are divided among the shards by the hash of
+     * their name, so that each class is processed by exactly one of
+     * the sessions given the same specifications and shard count.
+     */
+    public void setShard(int index, int count) {
+        if (count < 1 || index < 0 || index >= count)
+            throw new IllegalArgumentException("Invalid shard " + index + "/" + count);
+        shardIndex = index;
+        shardCount = count;
+    }
+
+    /** Return true if the named class file belongs to the session's shard. */
+    boolean inShard(String fileName) {
+        return shardCount == 1 || Math.floorMod(fileName.hashCode(), shardCount) == shardIndex;
+    }
+
+    /**
+     * Add the classes of the specified partial results file,
+     * written by other sessions, to the container.
+     */
+    public void mergePartialResults(File file) throws IOException {
+        PartialResults.read(file, includeJdk, classMetricsContainer);
+    }
+
+    /**
+     * Set whether class files whose contents are identical to those
+     * of an already processed class file are skipped.
+     * Such files, for example copies of a library shaded into several
+     * jars, then contribute to the metrics only once.
+     */
+    public void setDeduplication(boolean deduplicate) {
+        processedHashes = deduplicate ? ConcurrentHashMap.<ContentHash>newKeySet() : null;
+    }
+
+    /** Return the number of class files skipped as identical to processed ones. */
+    public int getDuplicates() { return duplicates.get(); }
+
+    /** Keep statistics of the analysis's phases in the specified object. */
+    public void setStatistics(AnalysisStatistics statistics) { this.statistics = statistics; }
+    /** Return the statistics of the analysis, or null if none are kept */
+    public AnalysisStatistics getStatistics() { return statistics; }
+
+    /**
+     * Return the start time of a phase, as given by System.nanoTime,
+     * or 0 if no statistics are kept, so that the phases of an analysis
+     * without statistics are not timed.
+     */
+    long startTime() {
+        return statistics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Record the end of a phase, if statistics are kept.
+     * @param startTime The phase's start, as returned by startTime
+     * @return The phase's duration in nanoseconds, or 0 if no statistics are kept
+     */
+    long record(AnalysisStatistics.Phase phase, long startTime) {
+        return statistics == null ? 0 : statistics.record(phase, startTime);
+    }
+
+    /** Record the reading of the specified class file bytes, if statistics are kept. */
+    private void recordRead(long startTime, byte[] classBytes) {
+        if (statistics != null) {
+            statistics.record(AnalysisStatistics.Phase.READ, startTime);
+            statistics.recordBytesRead(classBytes.length);
+        }
+    }
+
+    /**
+     * Output the metrics of each class to the specified handler as
+     * soon as the class is processed, instead of keeping them for
+     * printMetrics; finishStreamingOutput then outputs the metrics
+     * that depend on other classes.
+     * This must be called before any classes are processed.
+     */
+    public void setStreamingOutput(CkjmStreamingOutputHandler outputHandler) {
+        PackageMetricsContainer packageMetrics = classMetricsContainer.getPackageMetrics();
+        classMetricsContainer = new StreamingMetricsContainer(outputHandler, includeAll());
+        classMetricsContainer.setPackageMetrics(packageMetrics);
+    }
+
+    /**
+     * Output the number of children and the afferent couplings of
+     * all processed classes to the streaming output handler.
+     */
+    public void finishStreamingOutput() {
+        if (!(classMetricsContainer instanceof StreamingMetricsContainer))
+            throw new IllegalStateException("No streaming output handler has been set");
+        ((StreamingMetricsContainer)classMetricsContainer).finish();
+    }
+
+    /**
+     * Load and parse the specified class.
+     * The class specification can be either a class file name, or
+     * a jarfile, followed by space, followed by a class file name,
+     * or a jar, war, or ear file on its own, in which case all its classes,
+     * including those of the archives nested in it, are processed,
+     * or a directory, in which case all class files under it are processed,
+     * or a JMOD file, or jrt:/ followed by an optional module name,
+     * in which case the classes of the module, or of all the platform
+     * modules of the running JVM, are processed.
+     */
+    public void processClass(String classSpec) {
+        processClass(classSpec, Runnable::run);
+    }
+
+    /**
+     * Load and parse the specified class, handing the parsing
+     * and visiting of each class to the specified executor.
+     */
+    void processClass(String classSpec, Executor executor) {
+        int spaceIndex = classSpec.indexOf(' ');
+
+        if (spaceIndex == -1 && isArchive(classSpec)) {
+            processJar(classSpec, executor);
+            return;
+        }
+        if (spaceIndex == -1 && isJmod(classSpec)) {
+            processJmod(classSpec, executor);
+            return;
+        }
+        if (spaceIndex == -1 && classSpec.startsWith(RuntimeImage.SCHEME)) {
+            processRuntimeImage(classSpec.substring(RuntimeImage.SCHEME.length()), executor);
+            return;
+        }
+        /* Avoid examining the file system for plain class files */
+        if (spaceIndex == -1 && !classSpec.endsWith(".class") && Files.isDirectory(Paths.get(classSpec))) {
+            processDirectory(Paths.get(classSpec), executor);
+            return;
+        }
+        if (!inShard(spaceIndex == -1 ? classSpec : classSpec.substring(spaceIndex + 1)))
+            return;
+        executor.execute(() -> {
+            if (spaceIndex != -1) {
+                String jarPath = classSpec.substring(0, spaceIndex);
+                String className = classSpec.substring(spaceIndex + 1);
+                try {
+                    long start = startTime();
+                    byte[] classBytes = readJarEntry(jarPath, className);
+                    recordRead(start, classBytes);
+                    processClassBytes(classBytes, className);
+                } catch (IOException e) {
+                    System.err.println("Error loading " + className + " from " + jarPath + ": " + e);
+                }
+            } else {
+                try {
+                    long start = startTime();
+                    byte[] classBytes = Files.readAllBytes(Paths.get(classSpec));
+                    recordRead(start, classBytes);
+                    processClassBytes(classBytes, classSpec);
+                } catch (IOException e) {
+                    System.err.println("Error loading " + classSpec + ": " + e);
+                }
+            }
+        });
+    }
+
+    /** Return the contents of the named entry of a jar file. */
+    private static byte[] readJarEntry(String jarPath, String entryName) throws IOException {
+        try (ZipFile zip = new ZipFile(jarPath)) {
+            ZipEntry entry = zip.getEntry(entryName);
+            if (entry == null)
+                throw new IOException("File " + entryName + " not found");
+            try (InputStream in = zip.getInputStream(entry)) {
+                return readFully(in, entry.getSize());
+            }
+        }
+    }
+
+    /** Return true if the class specification names a jar, war, or ear file. */
+    static boolean isArchive(String classSpec) {
+        String name = classSpec.toLowerCase(Locale.ROOT);
+        return name.endsWith(".jar") || name.endsWith(".war") || name.endsWith(".ear");
+    }
+
+    /** Return true if the class specification names a JMOD file. */
+    static boolean isJmod(String classSpec) {
+        return classSpec.toLowerCase(Locale.ROOT).endsWith(".jmod");
+    }
+
+    /** Return the Java release of the running JVM, such as 8 or 17. */
+    private static int runtimeRelease() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+
+    /**
+     * Set the Java release for which the classes of multi-release
+     * jars are selected; by default that of the running JVM.
+     */
+    public void setRelease(int release) { this.release = release; }
+
+    /**
+     * Load and parse all classes contained in the specified jar file.
+     * The archive is opened once and its class entries are read
+     * in the order they appear in it.
+     */
+    void processJar(String jarPath, Executor executor) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(jarPath))) {
+            processArchive(in, jarPath, executor, new Semaphore(PREFETCH));
+        } catch (IOException e) {
+            System.err.println("Error loading " + jarPath + ": " + e);
+        }
+    }
+
+    /**
+     * Load and parse all classes of the specified JMOD file, the form
+     * in which modules are packaged in the JDK's jmods directory.
+     * Such a file is a zip archive preceded by a four-byte header;
+     * its classes are read from the archive's classes directory.
+     */
+    void processJmod(String jmodPath, Executor executor) {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(jmodPath))) {
+            byte[] header = new byte[JMOD_HEADER.length];
+            new DataInputStream(in).readFully(header);
+            if (!Arrays.equals(header, JMOD_HEADER))
+                throw new IOException("Not a JMOD file");
+            ZipInputStream zip = new ZipInputStream(in);
+            Semaphore unprocessed = new Semaphore(PREFETCH);
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String entryName = entry.getName();
+                /* Module descriptors are not classes */
+                if (entry.isDirectory() || !entryName.startsWith(JMOD_CLASSES_DIRECTORY) ||
+                    !entryName.endsWith(".class") || entryName.endsWith("module-info.class"))
+                    continue;
+                String path = entryName.substring(JMOD_CLASSES_DIRECTORY.length());
+                if (!inShard(path))
+                    continue;
+                long start = startTime();
+                byte[] classBytes = readFully(zip, entry.getSize());
+                recordRead(start, classBytes);
+                processArchiveEntry(classBytes, path, jmodPath, executor, unprocessed);
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading " + jmodPath + ": " + e);
+        }
+    }
+
+    /**
+     * Load and parse all classes of the named platform module of the
+     * running JVM, or of all its platform modules if the name is empty.
+     * The classes are read from the jrt:/ file system as from a directory.
+     */
+    void processRuntimeImage(String moduleName, Executor executor) {
+        RuntimeImage image = RuntimeImage.getSystem();
+        if (image == null) {
+            System.err.println("Error loading " + RuntimeImage.SCHEME + moduleName + ": the JVM has no runtime image");
+            return;
+        }
+        Path module = image.getModule(moduleName);
+        if (!Files.isDirectory(module)) {
+            System.err.println("Error loading " + RuntimeImage.SCHEME + moduleName + ": no such module");
+            return;
+        }
+        processDirectory(module, executor);
+    }
+
+    /** A class of a multi-release jar, with the release of its version directory */
+    private static final class VersionedClass {
+        final int version;
+        final byte[] classBytes;
+
+        VersionedClass(int version, byte[] classBytes) {
+            this.version = version;
+            this.classBytes = classBytes;
+        }
+    }
+
+    /**
+     * Load and parse all classes of the archive read from the specified stream.
+     * Archives nested in it, such as the libraries of Spring Boot jars,
+     * WAR, and EAR files, are read in turn from the enclosing archive's
+     * stream, without being extracted.
+     * In a multi-release jar each class is taken from the highest
+     * version directory not above the selected release; its classes
+     * are therefore processed after the whole jar has been read.
+     * The stream is not closed.
+     * @param unprocessed The permits of the entries read ahead of their processing
+     */
+    private void processArchive(InputStream stream, String archiveName, Executor executor,
+            Semaphore unprocessed) throws IOException {
+        JarInputStream in = new JarInputStream(stream, false);
+        Manifest manifest = in.getManifest();
+        boolean multiRelease = manifest != null &&
+            "true".equalsIgnoreCase(manifest.getMainAttributes().getValue("Multi-Release"));
+        Map<String, VersionedClass> versionedClasses = new LinkedHashMap<>();
+        JarEntry entry;
+        while ((entry = in.getNextJarEntry()) != null) {
+            String entryName = entry.getName();
+            if (entry.isDirectory())
+                continue;
+            if (isArchive(entryName)) {
+                try {
+                    processArchive(in, archiveName + "!/" + entryName, executor, unprocessed);
+                } catch (IOException e) {
+                    System.err.println("Error loading " + entryName + " from " + archiveName + ": " + e);
+                }
+                continue;
+            }
+            /* Module descriptors are not classes */
+            if (!entryName.endsWith(".class") || entryName.endsWith("module-info.class"))
+                continue;
+            String path = entryName;
+            int version = 0;
+            if (entryName.startsWith(VERSIONS_DIRECTORY)) {
+                /* Version directories are ignored in jars that are not multi-release */
+                int slash = entryName.indexOf('/', VERSIONS_DIRECTORY.length());
+                if (!multiRelease || slash == -1)
+                    continue;
+                try {
+                    version = Integer.parseInt(entryName.substring(VERSIONS_DIRECTORY.length(), slash));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (version > release)
+                    continue;
+                path = entryName.substring(slash + 1);
+            }
+            if (!inShard(path))
+                continue;
+            long start = startTime();
+            byte[] classBytes = readFully(in, entry.getSize());
+            recordRead(start, classBytes);
+            if (multiRelease) {
+                VersionedClass previous = versionedClasses.get(path);
+                if (previous == null || previous.version < version)
+                    versionedClasses.put(path, new VersionedClass(version, classBytes));
+            } else
+                processArchiveEntry(classBytes, entryName, archiveName, executor, unprocessed);
+        }
+        for (Map.Entry<String, VersionedClass> e : versionedClasses.entrySet())
+            processArchiveEntry(e.getValue().classBytes, e.getKey(), archiveName, executor, unprocessed);
+    }
+
+    /**
+     * Hand the parsing and visiting of the specified archive entry to
+     * the executor.
+     * A permit is held until the entry has been processed, so that at
+     * most PREFETCH entries are held in memory ahead of a parallel
+     * executor's threads; the archive's reading waits for them.
+     * @param unprocessed The permits of the archive's entries read ahead of their processing
+     */
+    private void processArchiveEntry(byte[] classBytes, String entryName, String archiveName, Executor executor,
+            Semaphore unprocessed) {
+        unprocessed.acquireUninterruptibly();
+        executor.execute(() -> {
+            try {
+                processClassBytes(classBytes, entryName);
+            } catch (IOException e) {
+                System.err.println("Error loading " + entryName + " from " + archiveName + ": " + e);
+            } finally {
+                unprocessed.release();
+            }
+        });
+    }
+
+    /**
+     * Load and parse all class files under the specified directory.
+     * The directory tree is walked first, obtaining the files' sizes
+     * with their names.
+     * The files are then read by a pool of I/O threads, up to PREFETCH
+     * files ahead of the one handed to the executor, so that reading
+     * overlaps with parsing even when the classes are processed serially.
+     * At most PREFETCH files are read and not yet processed; when they
+     * are, handing files to a parallel executor waits for its threads.
+     */
+    void processDirectory(Path dir, Executor executor) {
+        List<Path> files = new ArrayList<>();
+        List<Long> sizes = new ArrayList<>();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    /* Module descriptors are not classes */
+                    if (attrs.isRegularFile() && name.endsWith(".class") && !name.equals("module-info.class") &&
+                        inShard(dir.relativize(file).toString().replace(File.separatorChar, '/'))) {
+                        files.add(file);
+                        sizes.add(attrs.size());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    System.err.println("Error loading " + file + ": " + e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error loading " + dir + ": " + e);
+            return;
+        }
+
+        ExecutorService readers = Executors.newFixedThreadPool(IO_THREADS, task -> {
+            Thread thread = new Thread(task, "ckjm-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        /* Bounds the files read and not yet processed, even with a parallel executor */
+        Semaphore unprocessed = new Semaphore(PREFETCH);
+        try {
+            Deque<Future<byte[]>> pending = new ArrayDeque<>();
+            int next = 0;
+            for (int i = 0; i < files.size(); i++) {
+                for (; next < files.size() && next < i + PREFETCH; next++) {
+                    Path file = files.get(next);
+                    long size = sizes.get(next);
+                    unprocessed.acquireUninterruptibly();
+                    pending.add(readers.submit(() -> {
+                        long start = startTime();
+                        byte[] classBytes = readFile(file, size);
+                        recordRead(start, classBytes);
+                        return classBytes;
+                    }));
+                }
+                Future<byte[]> content = pending.remove();
+                String fileName = files.get(i).toString();
+                executor.execute(() -> {
+                    try {
+                        processClassBytes(getContent(content), fileName);
+                    } catch (IOException e) {
+                        System.err.println("Error loading " + fileName + ": " + e);
+                    } finally {
+                        unprocessed.release();
+                    }
+                });
+            }
+        } finally {
+            /* Reads already submitted still complete */
+            readers.shutdown();
+        }
+    }
+
+    /** Return the contents read by the specified task. */
+    private static byte[] getContent(Future<byte[]> content) throws IOException {
+        try {
+            return content.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Return the contents of the specified file of the specified size,
+     * read directly into an array of that size.
+     * Classes are hashed and parsed from arrays, so reading a file
+     * through a mapped or direct buffer would only add a copy.
+     */
+    static byte[] readFile(Path file, long size) throws IOException {
+        /* Such as the jrt:/ file system, which provides no file channels */
+        if (file.getFileSystem() != FileSystems.getDefault())
+            return Files.readAllBytes(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining())
+                if (channel.read(buffer) < 0)
+                    break;
+            /* The file may have changed since its size was obtained */
+            if (buffer.hasRemaining() || channel.position() < channel.size())
+                return Files.readAllBytes(file);
+            return buffer.array();
+        }
+    }
+
+    /**
+     * Read the remaining contents of a stream.
+     * @param size The expected size of the contents, or -1 if unknown
+     */
+    private static byte[] readFully(InputStream in, long size) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? (int)size : 8192);
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    /**
+     * Add the metrics of the class with the specified contents to
+     * the container, taking them from the result cache if possible.
+     * When deduplication is enabled, the class is skipped if identical
+     * contents have already been processed.
+     * Return the class's result, or null if it was skipped.
+     * @param fileName The name of the class file, used in error messages
+     */
+    ClassResult processClassBytes(byte[] classBytes, String fileName) throws IOException {
+        long classStart = startTime();
+        ContentHash hash = null;
+        ClassResult result = null;
+        if (resultCache != null || processedHashes != null) {
+            hash = ContentHash.of(classBytes);
+            if (processedHashes != null && !processedHashes.add(hash)) {
+                record(AnalysisStatistics.Phase.HASH, classStart);
+                duplicates.incrementAndGet();
+                return null;
+            }
+            if (resultCache != null)
+                result = resultCache.get(hash);
+            record(AnalysisStatistics.Phase.HASH, classStart);
+            if (result != null)
+                addResult(result);
+        }
+        if (result == null) {
+            long start = startTime();
+            JavaClass javaClass = new ClassParser(new ByteArrayInputStream(classBytes), fileName).parse();
+            record(AnalysisStatistics.Phase.PARSE, start);
+            result = visitClass(javaClass);
+            if (resultCache != null)
+                resultCache.put(hash, result);
+        }
+        if (statistics != null)
+            statistics.recordClass(result.getClassName(), System.nanoTime() - classStart);
+        return result;
+    }
+
+    /**
+     * Visit the specified class, updating the metrics container.
+     * Return the class's metrics.
+     */
+    ClassResult visitClass(JavaClass javaClass) {
+        ClassVisitor visitor = new ClassVisitor(javaClass, this);
+        visitor.start();
+        visitor.end();
+        return visitor.getResult();
+    }
+
+    /**
+     * Withdraw the metrics of a class, obtained through processClassBytes,
+     * from the container.
+     */
+    void removeResult(ClassResult result) {
+        classMetricsContainer.removeResult(result);
+    }
+
+    /**
+     * Add the metrics of a class to the container, calculating
+     * its depth in the inheritance tree.
+     */
+    void addResult(ClassResult result) {
+        String className = result.getClassName();
+        long start = startTime();
+        int dit = hierarchyIndex.getDit(className, result.getSuperclassName());
+        record(AnalysisStatistics.Phase.DIT, start);
+        if (dit == HierarchyIndex.UNRESOLVED)
+            System.err.println("Error obtaining all superclasses of " + className);
+        if (partialResults != null)
+            partialResults.write(result, dit);
+        else
+            classMetricsContainer.addResult(result, dit);
+    }
+
+    /**
+     * Load, parse, and visit the specified classes.
+     * When more than one thread is requested the classes are
+     * processed concurrently by a pool of worker threads, all of
+     * which update the session's container.
+     */
+    public void processClasses(Iterable<String> classSpecs) {
+        if (threads <= 1) {
+            for (String classSpec : classSpecs)
+                processClass(classSpec);
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            Executor executor = task -> results.add(pool.submit(task));
+            for (String classSpec : classSpecs)
+                processClass(classSpec, executor);
+            for (Future<?> result : results)
+                result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while processing classes", e);
+        } catch (ExecutionException e) {
+            /* Fail in the same way as a serial run would */
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Print the metrics of all the visited classes. */
+    public void printMetrics(CkjmOutputHandler outputHandler) {
+        classMetricsContainer.printMetrics(outputHandler, includeAll());
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and times of the phases of an analysis.
+ * The statistics record the time spent in each phase of processing
+ * a class, the number of classes and bytes processed, and the
+ * classes that took longest to process.
+ * They can be updated concurrently by the session's workers, and
+ * exported at any time as JSON or in the Prometheus text format.
+ *
+ * @see AnalysisSession#setStatistics
+ */
+public class AnalysisStatistics {
+    /** The phases of processing a class. */
+    public enum Phase {
+        /** Reading class files from files and archives */
+        READ,
+        /** Hashing class files for the result cache */
+        HASH,
+        /** Parsing class files with BCEL */
+        PARSE,
+        /** Visiting the class's fields and method declarations */
+        VISIT,
+        /** Scanning the bytecode of methods */
+        SCAN,
+        /** Calculating the lack of cohesion in methods */
+        LCOM,
+        /** Resolving the depth of inheritance tree */
+        DIT;
+
+        /** Return the phase's name, as used in the exported statistics */
+        String label() { return name().toLowerCase(Locale.ROOT); }
+    }
+
+    /** Number of slowest classes kept */
+    private static final int SLOWEST = 10;
+
+    /** The time the statistics were created, in nanoseconds */
+    private final long startTime = System.nanoTime();
+    /** Number of times each phase was entered */
+    private final LongAdder[] counts = new LongAdder[Phase.values().length];
+    /** Time spent in each phase, in nanoseconds */
+    private final LongAdder[] times = new LongAdder[Phase.values().length];
+    /** Number of classes processed */
+    private final LongAdder classes = new LongAdder();
+    /** Number of class file bytes read */
+    private final LongAdder bytesRead = new LongAdder();
+    /** The slowest classes processed, with the fastest of them at the head */
+    private final PriorityQueue<ClassTime> slowest =
+        new PriorityQueue<>(Comparator.comparingLong((ClassTime c) -> c.nanos));
+
+    /** The time taken to process a class */
+    private static class ClassTime {
+        final String className;
+        final long nanos;
+
+        ClassTime(String className, long nanos) {
+            this.className = className;
+            this.nanos = nanos;
+        }
+    }
+
+    public AnalysisStatistics() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+            times[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record the end of a phase.
+     * @param startTime The phase's start, as returned by System.nanoTime
+     * @return The phase's duration in nanoseconds
+     */
+    public long record(Phase phase, long startTime) {
+        long nanos = System.nanoTime() - startTime;
+        counts[phase.ordinal()].increment();
+        times[phase.ordinal()].add(nanos);
+        return nanos;
+    }
+
+    /** Record the reading of the specified number of class file bytes. */
+    public void recordBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /** Record the processing of a class, which took the specified time. */
+    public void recordClass(String className, long nanos) {
+        classes.increment();
+        synchronized (slowest) {
+            if (slowest.size() < SLOWEST)
+                slowest.add(new ClassTime(className, nanos));
+            else if (nanos > slowest.peek().nanos) {
+                slowest.poll();
+                slowest.add(new ClassTime(className, nanos));
+            }
+        }
+    }
+
+    /** Return the number of times the specified phase was entered */
+    public long getCount(Phase phase) { return counts[phase.ordinal()].sum(); }
+    /** Return the time spent in the specified phase, in seconds */
+    public double getSeconds(Phase phase) { return times[phase.ordinal()].sum() / 1e9; }
+    /** Return the number of classes processed */
+    public long getClasses() { return classes.sum(); }
+    /** Return the number of class file bytes read */
+    public long getBytesRead() { return bytesRead.sum(); }
+    /** Return the time since the statistics were created, in seconds */
+    public double getElapsedSeconds() { return (System.nanoTime() - startTime) / 1e9; }
+
+    /** Return the slowest classes, starting from the slowest. */
+    private List<ClassTime> getSlowest() {
+        List<ClassTime> list;
+        synchronized (slowest) {
+            list = new ArrayList<>(slowest);
+        }
+        list.sort(Collections.reverseOrder(Comparator.comparingLong((ClassTime c) -> c.nanos)));
+        return list;
+    }
+
+    /** Write the statistics as a JSON object. */
+    public void writeJson(Writer out) throws IOException {
+        double elapsed = getElapsedSeconds();
+        long classCount = getClasses();
+        out.write("{\n");
+        out.write("  \"elapsedSeconds\": " + format(elapsed) + ",\n");
+        out.write("  \"classes\": " + classCount + ",\n");
+        out.write("  \"classesPerSecond\": " + format(classCount / elapsed) + ",\n");
+        out.write("  \"bytesRead\": " + getBytesRead() + ",\n");
+        out.write("  \"phases\": {");
+        String separator = "\n";
+        for (Phase phase : Phase.values()) {
+            out.write(separator + "    \"" + phase.label() + "\": {\"count\": " + getCount(phase) +
+                ", \"seconds\": " + format(getSeconds(phase)) + "}");
+            separator = ",\n";
+        }
+        out.write("\n  },\n");
+        out.write("  \"slowestClasses\": [");
+        separator = "\n";
+        for (ClassTime c : getSlowest()) {
+            out.write(separator + "    {\"class\": \"" + escape(c.className) +
+                "\", \"seconds\": " + format(c.nanos / 1e9) + "}");
+            separator = ",\n";
+        }
+        out.write("\n  ]\n}\n");
+    }
+
+    /** Write the statistics in the Prometheus text exposition format. */
+    public void writePrometheus(Writer out) throws IOException {
+        double elapsed = getElapsedSeconds();
+        long classCount = getClasses();
+        out.write("# HELP ckjm_elapsed_seconds Time since the start of the analysis\n");
+        out.write("# TYPE ckjm_elapsed_seconds gauge\n");
+        out.write("ckjm_elapsed_seconds " + format(elapsed) + "\n");
+        out.write("# HELP ckjm_classes_total Classes processed\n");
+        out.write("# TYPE ckjm_classes_total counter\n");
+        out.write("ckjm_classes_total " + classCount + "\n");
+        out.write("# HELP ckjm_classes_per_second Classes processed per second\n");
+        out.write("# TYPE ckjm_classes_per_second gauge\n");
+        out.write("ckjm_classes_per_second " + format(classCount / elapsed) + "\n");
+        out.write("# HELP ckjm_read_bytes_total Class file bytes read\n");
+        out.write("# TYPE ckjm_read_bytes_total counter\n");
+        out.write("ckjm_read_bytes_total " + getBytesRead() + "\n");
+        out.write("# HELP ckjm_phase_total Times each analysis phase was entered\n");
+        out.write("# TYPE ckjm_phase_total counter\n");
+        for (Phase phase : Phase.values())
+            out.write("ckjm_phase_total{phase=\"" + phase.label() + "\"} " + getCount(phase) + "\n");
+        out.write("# HELP ckjm_phase_seconds_total Time spent in each analysis phase\n");
+        out.write("# TYPE ckjm_phase_seconds_total counter\n");
+        for (Phase phase : Phase.values())
+            out.write("ckjm_phase_seconds_total{phase=\"" + phase.label() + "\"} " + format(getSeconds(phase)) + "\n");
+        out.write("# HELP ckjm_slowest_class_seconds Time taken by the slowest classes\n");
+        out.write("# TYPE ckjm_slowest_class_seconds gauge\n");
+        for (ClassTime c : getSlowest())
+            out.write("ckjm_slowest_class_seconds{class=\"" + escape(c.className) + "\"} " +
+                format(c.nanos / 1e9) + "\n");
+    }
+
+    /** Return a number formatted independently of the locale. */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    /** Return a string escaped for inclusion in JSON and Prometheus quoted strings. */
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * The metrics of the classes of a previous run, indexed by class name,
+ * against which the metrics of a new run can be compared.
+ * A baseline can be loaded from ckjm's plain output, from the XML
+ * output of the Ant task, or from a binary results file; the format
+ * is recognized from the file's start.
+ *
+ * @see BaselineDiff
+ */
+public class Baseline {
+    /** The metric values of each class, in the order of Metric */
+    private final Map<String, int[]> classes;
+
+    private Baseline(Map<String, int[]> classes) {
+        this.classes = classes;
+    }
+
+    /** Return the number of classes in the baseline. */
+    public int size() { return classes.size(); }
+
+    /**
+     * Return the metric values of the named class, in the order
+     * of Metric, or null if the baseline does not contain it.
+     */
+    public int[] get(String className) { return classes.get(className); }
+
+    /** Return the names of the baseline's classes. */
+    public Set<String> getClassNames() { return Collections.unmodifiableSet(classes.keySet()); }
+
+    /** Load the baseline from the specified file. */
+    public static Baseline load(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            in.mark(4);
+            int magic = 0;
+            for (int i = 0; i < 4; i++)
+                magic = magic << 8 | Math.max(in.read(), 0);
+            in.reset();
+            if (magic == PrintBinaryResults.MAGIC)
+                return loadBinary(file);
+            /* An XML declaration or element */
+            if (magic >>> 24 == '<')
+                return loadXml(in);
+            return loadPlain(in);
+        }
+    }
+
+    /** Load a baseline from ckjm's plain output. */
+    private static Baseline loadPlain(InputStream stream) throws IOException {
+        Map<String, int[]> classes = new HashMap<>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        int metrics = Metric.values().length;
+        String line;
+        for (int lineNumber = 1; (line = in.readLine()) != null; lineNumber++) {
+            if (line.isEmpty())
+                continue;
+            int end = line.indexOf(' ');
+            if (end == -1)
+                throw new IOException("Missing metrics in baseline line " + lineNumber);
+            String className = line.substring(0, end);
+            int[] values = new int[metrics];
+            for (int i = 0; i < metrics; i++) {
+                int start = end + 1;
+                end = line.indexOf(' ', start);
+                if (end == -1)
+                    end = line.length();
+                if (start >= end)
+                    throw new IOException("Missing metrics in baseline line " + lineNumber);
+                values[i] = parseMetric(line, start, end, lineNumber);
+            }
+            classes.put(className, values);
+        }
+        return new Baseline(classes);
+    }
+
+    /** Return the metric value between the specified positions of a baseline line. */
+    private static int parseMetric(String line, int start, int end, int lineNumber) throws IOException {
+        boolean negative = line.charAt(start) == '-';
+        int value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10)
+                throw new IOException("Invalid metric in baseline line " + lineNumber + ": " + line.substring(start, end));
+            value = value * 10 + digit;
+        }
+        if (negative && end == start + 1)
+            throw new IOException("Invalid metric in baseline line " + lineNumber + ": -");
+        return negative ? -value : value;
+    }
+
+    /** Load a baseline from the XML output of the Ant task. */
+    private static Baseline loadXml(InputStream in) throws IOException {
+        Map<String, int[]> classes = new HashMap<>();
+        try {
+            XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(in);
+            String className = null;
+            int[] values = null;
+            while (xml.hasNext()) {
+                if (xml.next() != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                String element = xml.getLocalName();
+                if (element.equals("class")) {
+                    className = null;
+                    values = new int[Metric.values().length];
+                } else if (element.equals("name") && values != null) {
+                    className = xml.getElementText().trim();
+                    classes.put(className, values);
+                } else if (values != null && !element.equals("ckjm")) {
+                    Metric metric;
+                    try {
+                        metric = Metric.valueOf(element.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        /* Elements of other tools */
+                        continue;
+                    }
+                    values[metric.ordinal()] = Integer.parseInt(xml.getElementText().trim());
+                }
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Invalid XML baseline: " + e.getMessage(), e);
+        }
+        return new Baseline(classes);
+    }
+
+    /** Load a baseline from a binary results file. */
+    private static Baseline loadBinary(File file) throws IOException {
+        BinaryResultsReader reader = BinaryResultsReader.open(file);
+        Metric[] metrics = Metric.values();
+        Map<String, int[]> classes = new HashMap<>(reader.size() * 4 / 3 + 1);
+        for (int i = 0; i < reader.size(); i++) {
+            int[] values = new int[metrics.length];
+            for (Metric metric : metrics)
+                values[metric.ordinal()] = reader.get(i, metric);
+            classes.put(reader.getClassName(i), values);
+        }
+        return new Baseline(classes);
+    }
+}
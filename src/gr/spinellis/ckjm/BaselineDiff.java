@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An output handler that compares each class's metrics, as they are
+ * output, with those of a baseline, and prints only the differences.
+ * A class missing from the baseline is printed preceded by
+ * <code>+</code>, and a class whose metrics changed beyond the thresholds
+ * is printed preceded by <code>~</code>, followed by each such metric's
+ * name and its baseline and current values.
+ * Calling finish prints the baseline's classes that were not output,
+ * preceded by <code>-</code>.
+ *
+ * @see Baseline
+ */
+public class BaselineDiff implements CkjmOutputHandler {
+    /** The metrics of the previous run */
+    private final Baseline baseline;
+    /** The changes beyond which classes are reported */
+    private final Thresholds thresholds;
+    /** The stream where the differences are printed */
+    private final PrintStream printStream;
+    /** The names of the baseline's classes that have been output */
+    private final Set<String> matched = new HashSet<>();
+
+    /** Create a handler reporting any change with respect to the baseline. */
+    public BaselineDiff(Baseline baseline, PrintStream printStream) {
+        this(baseline, Thresholds.anyChange(), printStream);
+    }
+
+    BaselineDiff(Baseline baseline, Thresholds thresholds, PrintStream printStream) {
+        this.baseline = baseline;
+        this.thresholds = thresholds;
+        this.printStream = printStream;
+    }
+
+    /** Compare the class's metrics with those of the baseline. */
+    @Override
+    public void handleClass(String className, ClassMetrics classMetrics) {
+        int[] previous = baseline.get(className);
+        if (previous == null) {
+            printStream.println("+ " + className + " " + classMetrics);
+            return;
+        }
+        matched.add(className);
+        StringBuilder changes = null;
+        for (Metric metric : Metric.values()) {
+            int current = metric.get(classMetrics);
+            if (!thresholds.exceeded(metric, previous[metric.ordinal()], current))
+                continue;
+            if (changes == null)
+                changes = new StringBuilder("~ ").append(className);
+            changes.append(' ').append(metric).append(' ')
+                .append(previous[metric.ordinal()]).append("->").append(current);
+        }
+        if (changes != null)
+            printStream.println(changes);
+    }
+
+    /** Print the baseline's classes that were not output, ordered by name. */
+    public void finish() {
+        List<String> removed = new ArrayList<>();
+        for (String className : baseline.getClassNames())
+            if (!matched.contains(className))
+                removed.add(className);
+        Collections.sort(removed);
+        for (String className : removed) {
+            StringBuilder line = new StringBuilder("- ").append(className);
+            for (int value : baseline.get(className))
+                line.append(' ').append(value);
+            printStream.println(line);
+        }
+    }
+}
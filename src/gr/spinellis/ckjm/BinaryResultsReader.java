@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to results written by PrintBinaryResults.
+ * The file is mapped into memory, and values are read from it
+ * only when they are requested, so that single classes can be
+ * looked up and metrics aggregated without reading the whole file.
+ * A reader can be used concurrently.
+ *
+ * @see PrintBinaryResults
+ */
+public class BinaryResultsReader {
+    /** The file's contents */
+    private final ByteBuffer buffer;
+    /** Number of classes */
+    private final int size;
+    /** The values of each metric */
+    private final IntBuffer[] columns;
+    /** The offsets of the class names in the name bytes */
+    private final IntBuffer nameOffsets;
+    /** The position of the name bytes in the buffer */
+    private final int namesStart;
+
+    /** Create a reader of the results in the specified buffer. */
+    public BinaryResultsReader(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer.duplicate();
+        if (buffer.remaining() < PrintBinaryResults.HEADER_SIZE ||
+            buffer.getInt(0) != PrintBinaryResults.MAGIC)
+            throw new IOException("Not a ckjm binary results file");
+        if (buffer.getInt(4) != PrintBinaryResults.VERSION)
+            throw new IOException("Unsupported ckjm binary results version " + buffer.getInt(4));
+        size = buffer.getInt(8);
+        int metrics = buffer.getInt(12);
+        if (size < 0 || metrics < Metric.values().length)
+            throw new IOException("Invalid ckjm binary results header");
+
+        IntBuffer ints = ((ByteBuffer)this.buffer.position(PrintBinaryResults.HEADER_SIZE)).slice().asIntBuffer();
+        if ((long)metrics * size + size + 1 > ints.remaining())
+            throw new IOException("Truncated ckjm binary results file");
+        columns = new IntBuffer[metrics];
+        for (int m = 0; m < metrics; m++)
+            columns[m] = slice(ints, m * size, size);
+        nameOffsets = slice(ints, metrics * size, size + 1);
+        namesStart = PrintBinaryResults.HEADER_SIZE + (metrics * size + size + 1) * 4;
+        if (namesStart + (long)nameOffsets.get(size) > buffer.limit())
+            throw new IOException("Truncated ckjm binary results file");
+    }
+
+    /** Return a read-only view of length elements of ints starting at start. */
+    private static IntBuffer slice(IntBuffer ints, int start, int length) {
+        IntBuffer view = ints.duplicate();
+        view.position(start);
+        view.limit(start + length);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /** Return a reader of the results in the specified file, which is mapped into memory. */
+    public static BinaryResultsReader open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new BinaryResultsReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /** Return the number of classes */
+    public int size() { return size; }
+
+    /** Return the name of the class with the specified index. */
+    public String getClassName(int index) {
+        int start = nameOffsets.get(index);
+        byte[] name = new byte[nameOffsets.get(index + 1) - start];
+        ByteBuffer names = buffer.duplicate();
+        names.position(namesStart + start);
+        names.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Return the value of the metric for the class with the specified index. */
+    public int get(int index, Metric metric) {
+        return columns[metric.ordinal()].get(index);
+    }
+
+    /**
+     * Return a read-only view of the values of the metric for all
+     * classes, indexed like the classes.
+     */
+    public IntBuffer getColumn(Metric metric) {
+        return columns[metric.ordinal()].duplicate();
+    }
+
+    /**
+     * Return the index of the named class, or -1 if it is not
+     * in the results.
+     * The classes are searched through their sorted names.
+     */
+    public int indexOf(String className) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = getClassName(mid).compareTo(className);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    /** Return the sum of the metric's values over all classes. */
+    public long sum(Metric metric) {
+        IntBuffer column = columns[metric.ordinal()];
+        long sum = 0;
+        for (int i = 0; i < size; i++)
+            sum += column.get(i);
+        return sum;
+    }
+
+    /** Return the largest of the metric's values, or 0 if there are no classes. */
+    public int max(Metric metric) {
+        IntBuffer column = columns[metric.ordinal()];
+        int max = size > 0 ? Integer.MIN_VALUE : 0;
+        for (int i = 0; i < size; i++)
+            max = Math.max(max, column.get(i));
+        return max;
+    }
+}
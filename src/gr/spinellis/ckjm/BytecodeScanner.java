@@ -0,0 +1,334 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only scanner of method bytecode.
+ * The scanner decodes the bytes of a method's Code attribute
+ * directly against the class's constant pool, and reports to the
+ * class's visitor the coupling, field access, and method invocation
+ * events of the instructions it encounters.
+ * This avoids building a MethodGen and an InstructionList for
+ * every method, only to read its opcodes.
+ * <p>
+ * The events and the class names they carry are the same as those
+ * obtained through BCEL's instruction objects: local variable loads
+ * and stores and return instructions couple to their (primitive or
+ * Object) type, field and method references to their class and types,
+ * and checkcast and instanceof to their operand's type.
+ * Constant pool lookups are cached for the class being scanned.
+ *
+ * @see ClassVisitor
+ */
+class BytecodeScanner {
+    /** Class name used for primitive types */
+    static final String PRIMITIVE = "java.PRIMITIVE";
+    /** Class name used for references of unspecified type */
+    private static final String OBJECT = "java.lang.Object";
+
+    /** Length of fixed-size instructions; 0 for variable, -1 for invalid ones */
+    private static final byte[] LENGTH = new byte[256];
+    static {
+        Arrays.fill(LENGTH, 0, Const.JSR_W + 1, (byte)1);
+        Arrays.fill(LENGTH, Const.JSR_W + 1, 256, (byte)-1);
+        for (int op : new int[] {Const.BIPUSH, Const.LDC, Const.ILOAD, Const.LLOAD,
+                Const.FLOAD, Const.DLOAD, Const.ALOAD, Const.ISTORE, Const.LSTORE,
+                Const.FSTORE, Const.DSTORE, Const.ASTORE, Const.RET, Const.NEWARRAY})
+            LENGTH[op] = 2;
+        for (int op : new int[] {Const.SIPUSH, Const.LDC_W, Const.LDC2_W, Const.IINC,
+                Const.GETSTATIC, Const.PUTSTATIC, Const.GETFIELD, Const.PUTFIELD,
+                Const.INVOKEVIRTUAL, Const.INVOKESPECIAL, Const.INVOKESTATIC,
+                Const.NEW, Const.ANEWARRAY, Const.CHECKCAST, Const.INSTANCEOF,
+                Const.IFNULL, Const.IFNONNULL})
+            LENGTH[op] = 3;
+        for (int op = Const.IFEQ; op <= Const.JSR; op++)
+            LENGTH[op] = 3;
+        LENGTH[Const.MULTIANEWARRAY] = 4;
+        for (int op : new int[] {Const.INVOKEINTERFACE, Const.INVOKEDYNAMIC,
+                Const.GOTO_W, Const.JSR_W})
+            LENGTH[op] = 5;
+        LENGTH[Const.TABLESWITCH] = 0;
+        LENGTH[Const.LOOKUPSWITCH] = 0;
+        LENGTH[Const.WIDE] = 0;
+    }
+
+    /** The visitor of the class whose methods are scanned. */
+    private final ClassVisitor visitor;
+    /** The class's constant pool. */
+    private final ConstantPool constantPool;
+    /** Classes of field and method references, by class constant index. */
+    private final String[] memberClassNames;
+    /** Classes of checkcast and instanceof operands, by class constant index. */
+    private final String[] typeClassNames;
+    /** Classes of field types, by descriptor constant index. */
+    private final String[] fieldTypeClassNames;
+    /** Parsed method descriptors, by descriptor constant index. */
+    private final MethodDescriptor[] methodDescriptors;
+    /** Response set keys of invoked methods, by method reference index; -1 if not yet known. */
+    private final long[] methodKeys;
+
+    /** The types of a method descriptor and the classes they couple to. */
+    private static class MethodDescriptor {
+        final String[] argumentClassNames;
+        final String returnClassName;
+
+        MethodDescriptor(String descriptor) {
+            List<String> names = new ArrayList<>();
+            int start = 1;
+            while (descriptor.charAt(start) != ')') {
+                int end = descriptorEnd(descriptor, start);
+                names.add(descriptorClassName(descriptor, start, end));
+                start = end;
+            }
+            argumentClassNames = names.toArray(new String[names.size()]);
+            returnClassName = descriptorClassName(descriptor, start + 1, descriptor.length());
+        }
+    }
+
+    BytecodeScanner(ClassVisitor visitor, ConstantPool constantPool) {
+        this.visitor = visitor;
+        this.constantPool = constantPool;
+        int size = constantPool.getLength();
+        memberClassNames = new String[size];
+        typeClassNames = new String[size];
+        fieldTypeClassNames = new String[size];
+        methodDescriptors = new MethodDescriptor[size];
+        methodKeys = new long[size];
+        Arrays.fill(methodKeys, -1);
+    }
+
+    /** Return the index one past the end of the type descriptor starting at start. */
+    private static int descriptorEnd(String descriptor, int start) {
+        int i = start;
+        while (descriptor.charAt(i) == '[')
+            i++;
+        if (descriptor.charAt(i) == 'L')
+            return descriptor.indexOf(';', i) + 1;
+        return i + 1;
+    }
+
+    /**
+     * Return the class name associated with the type descriptor
+     * between start and end, as ClassVisitor.getClassName does for types.
+     */
+    static String descriptorClassName(String descriptor, int start, int end) {
+        while (descriptor.charAt(start) == '[')
+            start++;
+        if (descriptor.charAt(start) != 'L')
+            return PRIMITIVE;
+        return descriptor.substring(start + 1, end - 1).replace('/', '.');
+    }
+
+    /** Scan the instructions and exception handlers of a method's code. */
+    void scan(Code code) {
+        byte[] bytes = code.getCode();
+        int pc = 0;
+
+        while (pc < bytes.length) {
+            int opcode = bytes[pc] & 0xff;
+            int length = LENGTH[opcode];
+
+            if (opcode >= Const.ILOAD && opcode <= Const.ALOAD)
+                localVariable(opcode - Const.ILOAD);
+            else if (opcode >= Const.ILOAD_0 && opcode <= Const.ALOAD_3)
+                localVariable((opcode - Const.ILOAD_0) / 4);
+            else if (opcode >= Const.ISTORE && opcode <= Const.ASTORE)
+                localVariable(opcode - Const.ISTORE);
+            else if (opcode >= Const.ISTORE_0 && opcode <= Const.ASTORE_3)
+                localVariable((opcode - Const.ISTORE_0) / 4);
+            else if (opcode >= Const.IRETURN && opcode <= Const.RETURN)
+                visitor.registerCoupling(opcode == Const.ARETURN ? OBJECT : PRIMITIVE);
+            else {
+                switch (opcode) {
+                case Const.GETSTATIC:
+                case Const.PUTSTATIC:
+                case Const.GETFIELD:
+                case Const.PUTFIELD:
+                    fieldInstruction(u2(bytes, pc + 1));
+                    break;
+                case Const.INVOKEVIRTUAL:
+                case Const.INVOKESPECIAL:
+                case Const.INVOKESTATIC:
+                case Const.INVOKEINTERFACE:
+                    invokeInstruction(u2(bytes, pc + 1), false);
+                    break;
+                case Const.INVOKEDYNAMIC:
+                    invokeInstruction(u2(bytes, pc + 1), true);
+                    break;
+                case Const.CHECKCAST:
+                case Const.INSTANCEOF:
+                    visitor.registerCoupling(typeClassName(u2(bytes, pc + 1)));
+                    break;
+                case Const.WIDE:
+                    int widened = bytes[pc + 1] & 0xff;
+                    if (widened == Const.IINC)
+                        length = 6;
+                    else {
+                        if (widened >= Const.ILOAD && widened <= Const.ALOAD)
+                            localVariable(widened - Const.ILOAD);
+                        else if (widened >= Const.ISTORE && widened <= Const.ASTORE)
+                            localVariable(widened - Const.ISTORE);
+                        length = 4;
+                    }
+                    break;
+                case Const.TABLESWITCH:
+                case Const.LOOKUPSWITCH:
+                    length = switchLength(bytes, pc, opcode);
+                    break;
+                default:
+                    if (length < 0)
+                        throw new ClassFormatException("Invalid opcode " + opcode + " at offset " + pc);
+                }
+            }
+            pc += length;
+        }
+
+        for (CodeException handler : code.getExceptionTable()) {
+            int catchType = handler.getCatchType();
+            /* Handlers of any exception (finally blocks) have no type */
+            if (catchType != 0)
+                visitor.registerCoupling(constantPool.getConstantString(catchType, Const.CONSTANT_Class).replace('/', '.'));
+        }
+    }
+
+    /** Return the length of a tableswitch or lookupswitch at pc. */
+    private static int switchLength(byte[] bytes, int pc, int opcode) {
+        /* Operands are aligned to four bytes from the start of the code */
+        int operands = (pc + 4) & ~3;
+        if (opcode == Const.TABLESWITCH) {
+            int low = s4(bytes, operands + 4);
+            int high = s4(bytes, operands + 8);
+            return operands - pc + 12 + (high - low + 1) * 4;
+        } else {
+            int pairs = s4(bytes, operands + 4);
+            return operands - pc + 8 + pairs * 8;
+        }
+    }
+
+    /** Report a local variable load or store of the specified type kind. */
+    private void localVariable(int kind) {
+        /* The int, long, float, double loads and stores precede the reference ones */
+        visitor.registerCoupling(kind == 4 ? OBJECT : PRIMITIVE);
+    }
+
+    /** Report a field access through the specified field reference. */
+    private void fieldInstruction(int index) {
+        ConstantCP reference = (ConstantCP)constantPool.getConstant(index);
+        ConstantNameAndType nameAndType = (ConstantNameAndType)constantPool.getConstant(reference.getNameAndTypeIndex());
+        String className = memberClassName(reference.getClassIndex());
+        /* Fields of array classes are reported as those of Object */
+        if (className.startsWith("["))
+            className = OBJECT;
+        visitor.registerFieldAccess(className, nameAndType.getName(constantPool));
+        visitor.registerCoupling(fieldTypeClassName(nameAndType.getSignatureIndex()));
+    }
+
+    /** Report a method invocation through the specified method reference. */
+    private void invokeInstruction(int index, boolean dynamic) {
+        ConstantCP reference = (ConstantCP)constantPool.getConstant(index);
+        ConstantNameAndType nameAndType = (ConstantNameAndType)constantPool.getConstant(reference.getNameAndTypeIndex());
+        String methodName = nameAndType.getName(constantPool);
+        int descriptorIndex = nameAndType.getSignatureIndex();
+        MethodDescriptor descriptor = methodDescriptor(descriptorIndex);
+
+        for (String argumentClassName : descriptor.argumentClassNames)
+            visitor.registerCoupling(argumentClassName);
+        visitor.registerCoupling(descriptor.returnClassName);
+        /* BCEL reports the call site's name as the class of an invokedynamic */
+        String className = dynamic ? methodName : memberClassName(reference.getClassIndex());
+        long methodKey = methodKeys[index];
+        if (methodKey == -1) {
+            methodKey = visitor.methodKey(className, methodName, utf8(descriptorIndex));
+            methodKeys[index] = methodKey;
+        }
+        visitor.registerMethodInvocation(className, methodKey);
+    }
+
+    /**
+     * Return the class name of a field or method reference's class.
+     * Array classes, such as those of clone() calls, retain their descriptor.
+     */
+    private String memberClassName(int classIndex) {
+        String name = memberClassNames[classIndex];
+        if (name == null) {
+            name = constantPool.getConstantString(classIndex, Const.CONSTANT_Class).replace('/', '.');
+            memberClassNames[classIndex] = name;
+        }
+        return name;
+    }
+
+    /** Return the class name associated with a class constant used as a type. */
+    private String typeClassName(int classIndex) {
+        String name = typeClassNames[classIndex];
+        if (name == null) {
+            name = constantPool.getConstantString(classIndex, Const.CONSTANT_Class);
+            name = name.startsWith("[") ? descriptorClassName(name, 0, name.length()) : name.replace('/', '.');
+            typeClassNames[classIndex] = name;
+        }
+        return name;
+    }
+
+    /** Return the class name associated with a field type descriptor. */
+    private String fieldTypeClassName(int descriptorIndex) {
+        String name = fieldTypeClassNames[descriptorIndex];
+        if (name == null) {
+            String descriptor = utf8(descriptorIndex);
+            name = descriptorClassName(descriptor, 0, descriptor.length());
+            fieldTypeClassNames[descriptorIndex] = name;
+        }
+        return name;
+    }
+
+    /** Return the parsed method descriptor at the specified index. */
+    private MethodDescriptor methodDescriptor(int descriptorIndex) {
+        MethodDescriptor descriptor = methodDescriptors[descriptorIndex];
+        if (descriptor == null) {
+            descriptor = new MethodDescriptor(utf8(descriptorIndex));
+            methodDescriptors[descriptorIndex] = descriptor;
+        }
+        return descriptor;
+    }
+
+    /** Return the string of the specified UTF-8 constant. */
+    private String utf8(int index) {
+        return ((ConstantUtf8)constantPool.getConstant(index, Const.CONSTANT_Utf8)).getBytes();
+    }
+
+    /** Return the unsigned two-byte value at the specified offset. */
+    private static int u2(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) << 8 | (bytes[offset + 1] & 0xff);
+    }
+
+    /** Return the signed four-byte value at the specified offset. */
+    private static int s4(byte[] bytes, int offset) {
+        return bytes[offset] << 24 | (bytes[offset + 1] & 0xff) << 16 |
+            (bytes[offset + 2] & 0xff) << 8 | (bytes[offset + 3] & 0xff);
+    }
+}
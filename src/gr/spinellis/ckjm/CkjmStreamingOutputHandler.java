@@ -0,0 +1,49 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+/**
+ * Interface of output handlers that receive the metrics of each
+ * class as soon as they are known, rather than after all classes
+ * have been processed.
+ * The metrics that depend only on the class itself are handled
+ * while the classes are being processed, in no particular order.
+ * The number of children and the afferent couplings, which depend
+ * on all classes, are handled at the end, ordered by class name.
+ *
+ * @see AnalysisSession#setStreamingOutput
+ */
+public interface CkjmStreamingOutputHandler {
+    /**
+     * Method called when the metrics that depend only on the class
+     * itself (WMC, DIT, CBO, RFC, LCOM, NPM) are known.
+     * Calls are not made concurrently.
+     * @param className Name of the class
+     * @param classMetrics Value object that contains the class's metrics;
+     * its NOC and Ca are not set
+     */
+    void handleOwnMetrics(String className, ClassMetrics classMetrics);
+
+    /**
+     * Method called when all classes have been processed, with the
+     * metrics that depend on other classes.
+     * @param className Name of the class
+     * @param noc The class's number of children
+     * @param ca The class's afferent couplings
+     */
+    void handleCrossMetrics(String className, int noc, int ca);
+}
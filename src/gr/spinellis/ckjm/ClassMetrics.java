@@ -16,13 +16,15 @@
 
 package gr.spinellis.ckjm;
 
-import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Store details needed for calculating a class's Chidamber-Kemerer metrics.
  * Most fields in this class are set by ClassVisitor.
  * This class also encapsulates some policy decision regarding metrics
  * measurement.
+ * Counters and coupling sets that other classes update are safe to
+ * modify concurrently; see AnalysisSession.processClasses.
  *
  * @see ClassVisitor
  * @version $Revision: 1.12 $
@@ -30,9 +32,9 @@ import java.util.HashSet;
  */
 public class ClassMetrics {
     /** Weighted methods per class */
-    private int wmc;
+    private final AtomicInteger wmc;
     /** Number of children */
-    private int noc;
+    private final AtomicInteger noc;
     /** Response for a Class */
     private int rfc;
     /** Coupling between object classes */
@@ -42,33 +44,39 @@ public class ClassMetrics {
     /** Lack of cohesion in methods */
     private int lcom;
     /** Number of public methods */
-    private int npm;
+    private final AtomicInteger npm;
     /** True if the class has been visited by the metrics gatherer */
     private boolean visited;
     /** True if the class is public */
     private boolean isPublicClass;
-    /** Coupled classes: classes that use this class */
-    private HashSet<String> afferentCoupledClasses;
+    /** Coupled classes: identifiers of the classes that use this class */
+    private final IntSet afferentCoupledClasses;
+    /** Number of afferent couplings counted outside the coupled classes set */
+    private int countedCa;
 
     /** Default constructor. */
     ClassMetrics() {
-        wmc = 0;
-        noc = 0;
+        wmc = new AtomicInteger();
+        noc = new AtomicInteger();
         cbo = 0;
-        npm = 0;
+        npm = new AtomicInteger();
         visited = false;
-        afferentCoupledClasses = new HashSet<>();
+        afferentCoupledClasses = new IntSet();
     }
 
     /** Increment the weighted methods count */
-    public void incWmc() { wmc++; }
+    public void incWmc() { wmc.incrementAndGet(); }
+    /** Add the specified number of methods to the weighted methods count */
+    public void addWmc(int methods) { wmc.addAndGet(methods); }
     /** Return the weighted methods per class metric */
-    public int getWmc() { return wmc; }
+    public int getWmc() { return wmc.get(); }
 
     /** Increment the number of children */
-    public void incNoc() { noc++; }
+    public void incNoc() { noc.incrementAndGet(); }
+    /** Add the specified number of classes to the number of children */
+    void addNoc(int children) { noc.addAndGet(children); }
     /** Return the number of children */
-    public int getNoc() { return noc; }
+    public int getNoc() { return noc.get(); }
 
     /** Increment the Response for a Class */
     public void setRfc(int r) { rfc = r; }
@@ -91,14 +99,42 @@ public class ClassMetrics {
     public void setLcom(int lcomValue) { lcom = lcomValue; }
 
     /** Return the class's afferent couplings metric */
-    public int getCa() { return afferentCoupledClasses.size(); }
-    /** Add a class to the set of classes that depend on this class */
-    public void addAfferentCoupling(String className) { afferentCoupledClasses.add(className); }
+    public int getCa() {
+        synchronized (afferentCoupledClasses) {
+            return afferentCoupledClasses.size() + countedCa;
+        }
+    }
+    /** Add the specified number of afferent couplings, counted elsewhere */
+    void addCa(int couplings) {
+        synchronized (afferentCoupledClasses) {
+            countedCa += couplings;
+        }
+    }
+    /**
+     * Remove a class from the set of classes that depend on this class.
+     * @param classId The class's identifier in the container's symbol table
+     */
+    void removeAfferentCoupling(int classId) {
+        synchronized (afferentCoupledClasses) {
+            afferentCoupledClasses.remove(classId);
+        }
+    }
+    /**
+     * Add a class to the set of classes that depend on this class.
+     * @param classId The class's identifier in the container's symbol table
+     */
+    public void addAfferentCoupling(int classId) {
+        synchronized (afferentCoupledClasses) {
+            afferentCoupledClasses.add(classId);
+        }
+    }
 
     /** Increment the number of public methods count */
-    public void incNpm() { npm++; }
+    public void incNpm() { npm.incrementAndGet(); }
+    /** Add the specified number of methods to the public methods count */
+    public void addNpm(int methods) { npm.addAndGet(methods); }
     /** Return the number of public methods metric */
-    public int getNpm() { return npm; }
+    public int getNpm() { return npm.get(); }
 
     /** Return true if the class is public */
     public boolean isPublic() { return isPublicClass; }
@@ -123,19 +159,24 @@ public class ClassMetrics {
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        sb.append(wmc)
+        sb.append(getWmc())
            .append(" ").append(getDit())
-           .append(" ").append(noc)
+           .append(" ").append(getNoc())
            .append(" ").append(cbo)
            .append(" ").append(rfc)
            .append(" ").append(lcom)
            .append(" ").append(getCa())
-           .append(" ").append(npm);
+           .append(" ").append(getNpm());
         return sb.toString();
     }
 
     /** Mark the instance as visited by the metrics analyzer */
     public void setVisited() { visited = true; }
+    /** Mark the instance as no longer visited, and not public */
+    void clearVisited() {
+        visited = false;
+        isPublicClass = false;
+    }
     /**
      * Return true if the class has been visited by the metrics analyzer.
      * Classes may appear in the collection as a result of some kind
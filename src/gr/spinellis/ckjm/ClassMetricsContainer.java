@@ -18,6 +18,7 @@ package gr.spinellis.ckjm;
 
 import org.apache.bcel.classfile.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.*;
 
 /**
@@ -26,6 +27,9 @@ import java.io.*;
  * operation. Some metrics need to be updated as the program processes
  * other classes, so the class's metrics will be recovered from this
  * container to be updated.
+ * The container can be updated concurrently by visitors running on
+ * different threads; its output is ordered by class name, so that it
+ * does not depend on the order in which classes were processed.
  *
  * @version $Revision: 1.9 $
  * @author &lt;a href=&quot;http://www.spinellis.gr&quot;&gt;Diomidis Spinellis&lt;/a&gt;
@@ -33,17 +37,115 @@ import java.io.*;
 class ClassMetricsContainer {
 
     /** The map from class names to the corresponding metrics */
-    private Map<String, ClassMetrics> classMetricsMap = new HashMap<>();
+    private Map<String, ClassMetrics> classMetricsMap = new ConcurrentHashMap<>();
+    /** The identifiers of the class names used in coupling sets */
+    private final SymbolTable symbols = new SymbolTable();
+
+    /** The identifiers of method names and argument types used in response sets */
+    private final SymbolTable methodSignatures = new SymbolTable();
+
+    /** The aggregate metrics of the classes' packages, or null if they are not computed */
+    private volatile PackageMetricsContainer packageMetrics;
+
+    /** Return the table of class name identifiers */
+    SymbolTable getSymbols() { return symbols; }
+    /** Return the table of method name and argument type identifiers */
+    SymbolTable getMethodSignatures() { return methodSignatures; }
+
+    /** Compute the aggregate metrics of packages in the specified container, or in none if null. */
+    void setPackageMetrics(PackageMetricsContainer packageMetrics) { this.packageMetrics = packageMetrics; }
+    /** Return the container of the aggregate metrics of packages, or null */
+    PackageMetricsContainer getPackageMetrics() { return packageMetrics; }
+
+    /** Add a class's result to the aggregate metrics of packages, if they are computed. */
+    void addToPackage(ClassResult result) {
+        PackageMetricsContainer container = packageMetrics;
+        if (container != null)
+            container.addResult(result);
+    }
 
     /** Return a class's metrics */
     public ClassMetrics getMetrics(String className) {
         return classMetricsMap.computeIfAbsent(className, key -> new ClassMetrics());
     }
 
-    /** Print the metrics of all the visited classes. */
-    public void printMetrics(CkjmOutputHandler outputHandler) {
+    /** Return the metrics of the named class if it has been visited, otherwise null */
+    ClassMetrics getVisitedMetrics(String className) {
+        ClassMetrics classMetrics = classMetricsMap.get(className);
+        return classMetrics != null && classMetrics.isVisited() ? classMetrics : null;
+    }
+
+    /**
+     * Add the metrics of a visited class to the container, updating
+     * the metrics of its superclass and of the classes it is coupled to.
+     * @param dit The class's depth of inheritance tree, or
+     *     HierarchyIndex.UNRESOLVED if it is not known
+     */
+    void addResult(ClassResult result, int dit) {
+        addOwnMetrics(result, dit);
+        addToPackage(result);
+
+        getMetrics(result.getSuperclassName()).incNoc();
+        int classId = symbols.intern(result.getClassName());
+        for (String name : result.getEfferentCoupledClasses())
+            getMetrics(name).addAfferentCoupling(classId);
+    }
+
+    /**
+     * Withdraw the metrics of a class added through addResult,
+     * such as a class whose class file has changed or been deleted,
+     * together with its contributions to the metrics of its
+     * superclass and of the classes it is coupled to.
+     * The aggregate metrics of packages cannot be withdrawn.
+     */
+    void removeResult(ClassResult result) {
+        if (packageMetrics != null)
+            throw new UnsupportedOperationException("Package metrics cannot be withdrawn");
+        String className = result.getClassName();
+        ClassMetrics classMetrics = getMetrics(className);
+
+        classMetrics.clearVisited();
+        classMetrics.addWmc(-result.getWmc());
+        classMetrics.addNpm(-result.getNpm());
+        classMetrics.setDit(0);
+        classMetrics.setCbo(0);
+        classMetrics.setRfc(0);
+        classMetrics.setLcom(0);
+
+        getMetrics(result.getSuperclassName()).addNoc(-1);
+        int classId = symbols.intern(className);
+        for (String name : result.getEfferentCoupledClasses())
+            getMetrics(name).removeAfferentCoupling(classId);
+    }
+
+    /**
+     * Mark a class as visited and set the metrics that depend only
+     * on the class itself from its result; return its metrics.
+     */
+    ClassMetrics addOwnMetrics(ClassResult result, int dit) {
+        ClassMetrics classMetrics = getMetrics(result.getClassName());
+
+        classMetrics.setVisited();
+        if (result.isPublic())
+            classMetrics.setPublic();
+        classMetrics.addWmc(result.getWmc());
+        classMetrics.addNpm(result.getNpm());
+        if (dit != HierarchyIndex.UNRESOLVED)
+            classMetrics.setDit(dit);
+        classMetrics.setCbo(result.getEfferentCoupledClasses().length);
+        classMetrics.setRfc(result.getRfc());
+        classMetrics.setLcom(result.getLcom());
+        return classMetrics;
+    }
+
+    /**
+     * Print the metrics of all the visited classes.
+     * @param includeAll True to print non-public classes as well
+     */
+    public void printMetrics(CkjmOutputHandler outputHandler, boolean includeAll) {
         classMetricsMap.entrySet().stream()
-                .filter(entry -> entry.getValue().isVisited() && (MetricsFilter.includeAll() || entry.getValue().isPublic()))
+                .sorted(Map.Entry.comparingByKey())
+                .filter(entry -> entry.getValue().isVisited() && (includeAll || entry.getValue().isPublic()))
                 .forEach(entry -> outputHandler.handleClass(entry.getKey(), entry.getValue()));
     }
 }
@@ -0,0 +1,113 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The metrics of a single class that depend only on its class file.
+ * A result is produced by visiting the class, and can be stored
+ * and added to a container again without parsing the class.
+ * The values that depend on other classes (DIT, NOC, Ca) are
+ * derived from the superclass name and the efferent couplings
+ * when the result is added to a container.
+ *
+ * @see ClassVisitor
+ * @see ClassMetricsContainer#addResult
+ */
+class ClassResult {
+    /** The class's fully qualified name */
+    private final String className;
+    /** The name of the class's superclass */
+    private final String superclassName;
+    /** True if the class is public */
+    private final boolean isPublicClass;
+    /** Weighted methods per class */
+    private final int wmc;
+    /** Number of public methods */
+    private final int npm;
+    /** Response for a Class */
+    private final int rfc;
+    /** Lack of cohesion in methods */
+    private final int lcom;
+    /** Names of the classes this class is coupled to */
+    private final String[] efferentCoupledClasses;
+
+    ClassResult(String className, String superclassName, boolean isPublicClass,
+            int wmc, int npm, int rfc, int lcom, String[] efferentCoupledClasses) {
+        this.className = className;
+        this.superclassName = superclassName;
+        this.isPublicClass = isPublicClass;
+        this.wmc = wmc;
+        this.npm = npm;
+        this.rfc = rfc;
+        this.lcom = lcom;
+        this.efferentCoupledClasses = efferentCoupledClasses;
+    }
+
+    /** Return the class's fully qualified name */
+    String getClassName() { return className; }
+    /** Return the name of the class's superclass */
+    String getSuperclassName() { return superclassName; }
+    /** Return true if the class is public */
+    boolean isPublic() { return isPublicClass; }
+    /** Return the weighted methods per class metric */
+    int getWmc() { return wmc; }
+    /** Return the number of public methods metric */
+    int getNpm() { return npm; }
+    /** Return the Response for a Class */
+    int getRfc() { return rfc; }
+    /** Return the class's lack of cohesion in methods metric */
+    int getLcom() { return lcom; }
+    /** Return the names of the classes this class is coupled to */
+    String[] getEfferentCoupledClasses() { return efferentCoupledClasses; }
+
+    /** Write the result to the specified output. */
+    void write(DataOutput out) throws IOException {
+        out.writeUTF(className);
+        out.writeUTF(superclassName);
+        out.writeBoolean(isPublicClass);
+        out.writeInt(wmc);
+        out.writeInt(npm);
+        out.writeInt(rfc);
+        out.writeInt(lcom);
+        out.writeInt(efferentCoupledClasses.length);
+        for (String name : efferentCoupledClasses)
+            out.writeUTF(name);
+    }
+
+    /** Read a result written by write from the specified input. */
+    static ClassResult read(DataInput in) throws IOException {
+        String className = in.readUTF();
+        String superclassName = in.readUTF();
+        boolean isPublicClass = in.readBoolean();
+        int wmc = in.readInt();
+        int npm = in.readInt();
+        int rfc = in.readInt();
+        int lcom = in.readInt();
+        int couplings = in.readInt();
+        if (couplings < 0)
+            throw new IOException("Invalid number of couplings: " + couplings);
+        String[] efferentCoupledClasses = new String[couplings];
+        for (int i = 0; i < efferentCoupledClasses.length; i++)
+            efferentCoupledClasses[i] = in.readUTF();
+        return new ClassResult(className, superclassName, isPublicClass,
+                wmc, npm, rfc, lcom, efferentCoupledClasses);
+    }
+}
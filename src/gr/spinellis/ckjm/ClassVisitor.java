@@ -18,7 +18,6 @@ package gr.spinellis.ckjm;
 
 import org.apache.bcel.classfile.*;
 import org.apache.bcel.generic.*;
-import org.apache.bcel.Repository;
 import org.apache.bcel.Constants;
 import org.apache.bcel.util.*;
 import java.io.*;
@@ -35,60 +34,69 @@ import java.lang.reflect.Modifier;
 public class ClassVisitor extends org.apache.bcel.classfile.EmptyVisitor {
     /** The class being visited. */
     private JavaClass visitedClass;
-    /** The class's constant pool. */
-    private ConstantPoolGen constantPool;
+    /** The scanner of the class's method bytecode. */
+    private BytecodeScanner bytecodeScanner;
     /** The class's fully qualified name. */
     private String classFullyQualifiedName;
+    /** The analysis this visit is part of. */
+    private AnalysisSession session;
     /** The container where metrics for all classes are stored. */
     private ClassMetricsContainer classMetricsContainer;
-    /** The metrics for the class being visited. */
-    private ClassMetrics classMetrics;
-er>    /* Classes encountered.
+    /** The name of the class's superclass. */
+    private String superClassName;
+    /** True if the class is public. */
+    private boolean isPublicClass;
+    /** Number of methods of the class. */
+    private int wmc;
+    /** Number of public methods of the class. */
+    private int npm;
+    /** The class's metrics, available at the end of the visit. */
+    private ClassResult result;
+    /** Time spent scanning the class's bytecode, in nanoseconds. */
+    private long scanTime;
+    /** Identifiers of the classes encountered.
      * Its cardinality is used for calculating the CBO.
      */
-    private HashSet<String> efferentCoupledClasses = new HashSet<String>();
-    /** Methods encountered.
+    private IntSet efferentCoupledClasses = new IntSet();
+    /** Methods encountered, as keys returned by methodKey.
      * Its cardinality is used for calculating the RFC.
      */
-    private HashSet<String> responseSet = new HashSet<String>();
+    private LongSet responseSet = new LongSet();
     /** Use of fields in methods.
      * Its contents are used for calculating the LCOM.
-     * We use a Tree rather than a Hash to calculate the
-     * intersection in O(n) instead of O(n*n).
+     * Each method's fields are stored as a set of bits indexed
+     * through fieldIndex, so that the intersection of two methods'
+     * fields can be tested word by word.
      */
-    ArrayList<TreeSet<String>> methodFieldUsage = new ArrayList<TreeSet<String>>();
+    ArrayList<BitSet> methodFieldUsage = new ArrayList<BitSet>();
+    /** Map from the names of the class's fields to dense indices. */
+    private HashMap<String, Integer> fieldIndex = new HashMap<String, Integer>();
 
-    public ClassVisitor(JavaClass javaClass, ClassMetricsContainer classMetricsContainer) {
+    public ClassVisitor(JavaClass javaClass, AnalysisSession session) {
         visitedClass = javaClass;
-        constantPool = new ConstantPoolGen(visitedClass.getConstantPool());
-        this.classMetricsContainer = classMetricsContainer;
+        bytecodeScanner = new BytecodeScanner(this, javaClass.getConstantPool());
+        this.session = session;
+        this.classMetricsContainer = session.getContainer();
         classFullyQualifiedName = javaClass.getClassName();
-        classMetrics = classMetricsContainer.getMetrics(classFullyQualifiedName);
     }
 
     /** Return the class's metrics container. */
-    public ClassMetrics getMetrics() { return classMetrics; }
+    public ClassMetrics getMetrics() { return classMetricsContainer.getMetrics(classFullyQualifiedName); }
+
+    /** Return the class's metrics, once the visit has ended. */
+    ClassResult getResult() { return result; }
 
     public void start() {
+        long start = session.startTime();
         visitJavaClass(visitedClass);
+        /* Exclude the time recorded for scanning */
+        session.record(AnalysisStatistics.Phase.VISIT, start + scanTime);
     }
 
     /** Calculate the class's metrics based on its elements. */
     public void visitJavaClass(JavaClass javaClass) {
-        String superClassName   = javaClass.getSuperclassName();
-        String packageName = javaClass.getPackageName();
-
-        classMetrics.setVisited();
-        if (javaClass.isPublic())
-            classMetrics.setPublic();
-        ClassMetrics superClassMetrics = classMetricsContainer.getMetrics(superClassName);
-
-        superClassMetrics.incNoc();
-        try {
-            classMetrics.setDit(javaClass.getSuperClasses().length);
-        } catch( ClassNotFoundException ex) {
-            System.err.println("Error obtaining all superclasses of " + javaClass);
-        }
+        superClassName = javaClass.getSuperclassName();
+        isPublicClass = javaClass.isPublic();
         registerCoupling(superClassName);
 
         String[] interfaceNames = javaClass.getInterfaceNames();
@@ -108,11 +116,10 @@ er>    /* Classes encountered.
     /** Add a given class to the classes we are coupled to */
     public void registerCoupling(String className) {
         /* Measuring decision: don't couple to Java SDK */
-        if ((MetricsFilter.isJdkIncluded() ||
+        if ((session.isJdkIncluded() ||
              !ClassMetrics.isJdkClass(className)) &&
             !classFullyQualifiedName.equals(className)) {
-            efferentCoupledClasses.add(className);
-            classMetricsContainer.getMetrics(className).addAfferentCoupling(classFullyQualifiedName);
+            efferentCoupledClasses.add(classMetricsContainer.getSymbols().intern(className));
         }
     }
 
@@ -124,15 +131,40 @@ er>    /* Classes encountered.
     /* Add a given class to the classes we are coupled to */
     void registerFieldAccess(String className, String fieldName) {
         registerCoupling(className);
-        if (className.equals(classFullyQualifiedName))
-            methodFieldUsage.get(methodFieldUsage.size() - 1).add(fieldName);
+        if (className.equals(classFullyQualifiedName)) {
+            Integer index = fieldIndex.get(fieldName);
+            if (index == null) {
+                index = fieldIndex.size();
+                fieldIndex.put(fieldName, index);
+            }
+            methodFieldUsage.get(methodFieldUsage.size() - 1).set(index);
+        }
     }
 
-    /* Add a given method to our response set */
-    void registerMethodInvocation(String className, String methodName, Type[] args) {
+    /**
+     * Add a given method to our response set.
+     * @param methodKey The method's key, as returned by methodKey
+     */
+    void registerMethodInvocation(String className, long methodKey) {
         registerCoupling(className);
         /* Measuring decision: calls to JDK methods are included in the RFC calculation */
-        incrementRFC(className, methodName, args);
+        responseSet.add(methodKey);
+    }
+
+    /**
+     * Return the key identifying a method in the response set.
+     * Methods are identified by their class, name, and argument types,
+     * but not by their return type.
+     * The key combines the identifiers of the class name and of the
+     * method name and argument descriptors, so that methods can
+     * be compared without building their signatures.
+     * @param descriptor The method's descriptor
+     */
+    long methodKey(String className, String methodName, String descriptor) {
+        int classId = classMetricsContainer.getSymbols().intern(className);
+        String signature = methodName + descriptor.substring(0, descriptor.indexOf(')') + 1);
+        int signatureId = classMetricsContainer.getMethodSignatures().intern(signature);
+        return (long)classId << 32 | signatureId;
     }
 
     /** Called when a field access is encountered. */
@@ -140,40 +172,34 @@ er>    /* Classes encountered.
         registerCoupling(field.getType());
     }
 
-    /** Called when encountering a method that should be included in the
-        class's RFC. */
-    private void incrementRFC(String className, String methodName, Type[] arguments) {
-        String argumentList = Arrays.asList(arguments).toString();
-        // remove [ ] chars from begin and end
-        String args = argumentList.substring(1, argumentList.length() - 1);
-        String signature = className + "." + methodName + "(" + args + ")";
-        responseSet.add(signature);
-    }
-
     /** Called when a method invocation is encountered. */
     public void visitMethod(Method method) {
-        MethodGen methodGen = new MethodGen(method, visitedClass.getClassName(), constantPool);
+        Type[] argTypes   = method.getArgumentTypes();
 
-        Type   resultType = methodGen.getReturnType();
-        Type[] argTypes   = methodGen.getArgumentTypes();
-
-        registerCoupling(methodGen.getReturnType());
+        registerCoupling(method.getReturnType());
         for (int i = 0; i < argTypes.length; i++)
             registerCoupling(argTypes[i]);
 
-        String[] exceptions = methodGen.getExceptions();
-        for (int i = 0; i < exceptions.length; i++)
-            registerCoupling(exceptions[i]);
+        ExceptionTable exceptionTable = method.getExceptionTable();
+        if (exceptionTable != null) {
+            String[] exceptions = exceptionTable.getExceptionNames();
+            for (int i = 0; i < exceptions.length; i++)
+                registerCoupling(exceptions[i]);
+        }
 
         /* Measuring decision: A class's own methods contribute to its RFC */
-        incrementRFC(classFullyQualifiedName, method.getName(), argTypes);
+        responseSet.add(methodKey(classFullyQualifiedName, method.getName(), method.getSignature()));
 
-        classMetrics.incWmc();
+        wmc++;
         if (Modifier.isPublic(method.getModifiers()))
-            classMetrics.incNpm();
-        methodFieldUsage.add(new TreeSet<String>());
-        MethodVisitor methodVisitor = new MethodVisitor(methodGen, this);
-        methodVisitor.start();
+            npm++;
+        methodFieldUsage.add(new BitSet());
+        Code code = method.getCode();
+        if (!method.isAbstract() && !method.isNative() && code != null) {
+            long start = session.startTime();
+            bytecodeScanner.scan(code);
+            scanTime += session.record(AnalysisStatistics.Phase.SCAN, start);
+        }
     }
 
     /** Return a class name associated with a type. */
@@ -190,32 +216,46 @@ er>    /* Classes encountered.
         }
     }
 
-    /** Do final accounting at the end of the visit. */
+    /**
+     * Do final accounting at the end of the visit, and add the
+     * class's metrics to the session's container.
+     */
     public void end() {
-        classMetrics.setCbo(efferentCoupledClasses.size());
-        classMetrics.setRfc(responseSet.size());
+        SymbolTable symbols = classMetricsContainer.getSymbols();
+        int[] efferentIds = efferentCoupledClasses.toArray();
+        String[] efferentNames = new String[efferentIds.length];
+        for (int i = 0; i < efferentIds.length; i++)
+            efferentNames[i] = symbols.getName(efferentIds[i]);
         /*
          * Calculate LCOM  as |P| - |Q| if |P| - |Q| > 0 or 0 otherwise
          * where
          * P = set of all empty set intersections
          * Q = set of all nonempty set intersections
          */
-        int lcom = calculateLCOM();
-        classMetrics.setLcom(lcom > 0 ? lcom : 0);
+        long start = session.startTime();
+        int lcom = calculateLCOM(methodFieldUsage);
+        session.record(AnalysisStatistics.Phase.LCOM, start);
+        result = new ClassResult(classFullyQualifiedName, superClassName, isPublicClass,
+                wmc, npm, responseSet.size(), lcom > 0 ? lcom : 0, efferentNames);
+        session.addResult(result);
     }
 
-    private int calculateLCOM() {
+    /**
+     * Return |P| - |Q| for the specified field usage of each method,
+     * where P and Q are the sets of method pairs that share no fields
+     * and some fields respectively.
+     */
+    static int calculateLCOM(List<BitSet> methodFieldUsage) {
         int lcom = 0;
-        for (int i = 0; i < methodFieldUsage.size(); i++)
+        for (int i = 0; i < methodFieldUsage.size(); i++) {
+            BitSet fields = methodFieldUsage.get(i);
             for (int j = i + 1; j < methodFieldUsage.size(); j++) {
-                /* A shallow unknown-type copy is enough */
-                TreeSet<?> intersection = (TreeSet<?>)methodFieldUsage.get(i).clone();
-                intersection.retainAll(methodFieldUsage.get(j));
-                if (intersection.size() == 0)
-                    lcom++;
-                else
+                if (fields.intersects(methodFieldUsage.get(j)))
                     lcom--;
+                else
+                    lcom++;
             }
+        }
         return lcom;
     }
 }
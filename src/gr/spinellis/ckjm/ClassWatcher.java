@@ -0,0 +1,254 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep the metrics of the classes under some directories up to date
+ * as their class files change, for example when they are recompiled.
+ * The class files are analyzed once when the watcher is created.
+ * Then, on each batch of file system events, only the changed class
+ * files are analyzed again: the old result of each one is withdrawn
+ * from the session's container, together with its contributions to
+ * the metrics of other classes, and the new one is added.
+ * The metrics of the changed classes and of the classes whose NOC, Ca,
+ * or DIT changed with them are then output.
+ *
+ * @see MetricsFilter
+ * @see ClassMetricsContainer#removeResult
+ */
+public class ClassWatcher implements Closeable {
+    /** Time without further events after which a batch of changes is applied */
+    private static final long QUIET_MILLIS = 20;
+
+    /** The session whose metrics are kept up to date */
+    private final AnalysisSession session;
+    /** The service notifying changes to the watched directories */
+    private final WatchService watchService;
+    /** The watched directories, by their watch key */
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    /** The result of each analyzed class file */
+    private final Map<Path, ClassResult> results = new HashMap<>();
+    /** The hash of the contents of each analyzed class file */
+    private final Map<Path, ContentHash> hashes = new HashMap<>();
+
+    /**
+     * Analyze the class files under the specified directories,
+     * adding their metrics to the session, and start watching
+     * the directories for changes.
+     * The session must keep its metrics in memory, as for
+     * AnalysisSession.printMetrics, and must not skip identical
+     * class files.
+     */
+    public ClassWatcher(AnalysisSession session, List<Path> roots) throws IOException {
+        this.session = session;
+        watchService = FileSystems.getDefault().newWatchService();
+        Set<Path> files = new LinkedHashSet<>();
+        for (Path root : roots)
+            register(root, files);
+        Set<String> affected = new TreeSet<>();
+        for (Path file : files)
+            update(file, affected);
+    }
+
+    /**
+     * Watch the specified directory and those under it,
+     * adding the class files found to the specified set.
+     */
+    private void register(Path root, Set<Path> files) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                directories.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isClassFile(file))
+                    files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Return true if the file's name is that of a class file other than a module descriptor. */
+    private static boolean isClassFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".class") && !name.equals("module-info.class");
+    }
+
+    /**
+     * Wait for changes to the watched class files, apply them to the
+     * session's metrics, and output the metrics of the affected classes,
+     * ordered by name.
+     * Changes are collected until no events arrive for a short time,
+     * so that a compilation's class files are applied together.
+     * Return false if the watcher has been closed.
+     */
+    public boolean update(CkjmOutputHandler outputHandler) throws IOException, InterruptedException {
+        Set<String> affected = new TreeSet<>();
+        /* Events, such as those of new directories, may change no class */
+        while (affected.isEmpty()) {
+            Set<Path> changed = new LinkedHashSet<>();
+            try {
+                WatchKey key = watchService.take();
+                do {
+                    collect(key, changed);
+                } while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null);
+            } catch (ClosedWatchServiceException e) {
+                return false;
+            }
+
+            boolean hierarchyChanged = false;
+            /* The superclasses of the changed classes may have been recompiled as well */
+            session.getHierarchyIndex().clear();
+            for (Path file : changed)
+                hierarchyChanged |= update(file, affected);
+            if (hierarchyChanged)
+                updateDit(affected);
+        }
+
+        ClassMetricsContainer container = session.getContainer();
+        for (String className : affected) {
+            ClassMetrics classMetrics = container.getVisitedMetrics(className);
+            if (classMetrics != null && (session.includeAll() || classMetrics.isPublic()))
+                outputHandler.handleClass(className, classMetrics);
+        }
+        return true;
+    }
+
+    /** Add the class files changed according to the key's events to the specified set. */
+    private void collect(WatchKey key, Set<Path> changed) throws IOException {
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                /* Events were lost; check all class files */
+                changed.addAll(results.keySet());
+                for (Path root : new TreeSet<>(directories.values()))
+                    register(root, changed);
+                continue;
+            }
+            Path file = dir.resolve((Path)event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file))
+                register(file, changed);
+            else if (isClassFile(file))
+                changed.add(file);
+        }
+        if (!key.reset())
+            directories.remove(key);
+    }
+
+    /**
+     * Apply the current contents of the specified class file to the
+     * session's metrics, adding the names of the affected classes to
+     * the specified set.
+     * Return true if the class hierarchy may have changed.
+     */
+    private boolean update(Path file, Set<String> affected) {
+        byte[] classBytes;
+        try {
+            classBytes = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            classBytes = null;
+        } catch (IOException e) {
+            System.err.println("Error loading " + file + ": " + e);
+            return false;
+        }
+        ContentHash hash = classBytes == null ? null : ContentHash.of(classBytes);
+        if (hash != null && hash.equals(hashes.get(file)))
+            return false;
+
+        ClassResult old = results.remove(file);
+        hashes.remove(file);
+        if (old != null) {
+            session.removeResult(old);
+            addAffected(old, affected);
+        }
+        if (classBytes == null)
+            return old != null;
+
+        ClassResult result;
+        try {
+            result = session.processClassBytes(classBytes, file.toString());
+        } catch (IOException | RuntimeException e) {
+            /* Possibly a class file still being written; another event follows */
+            System.err.println("Error loading " + file + ": " + e);
+            return old != null;
+        }
+        if (result == null)
+            return old != null;
+        results.put(file, result);
+        hashes.put(file, hash);
+        addAffected(result, affected);
+        return old == null || !old.getSuperclassName().equals(result.getSuperclassName());
+    }
+
+    /** Add the classes whose metrics depend on the specified result to the set. */
+    private static void addAffected(ClassResult result, Set<String> affected) {
+        affected.add(result.getClassName());
+        affected.add(result.getSuperclassName());
+        for (String name : result.getEfferentCoupledClasses())
+            affected.add(name);
+    }
+
+    /**
+     * Recalculate the depth in the inheritance tree of all analyzed
+     * classes, adding those whose depth changed to the specified set.
+     */
+    private void updateDit(Set<String> affected) {
+        HierarchyIndex hierarchyIndex = session.getHierarchyIndex();
+        ClassMetricsContainer container = session.getContainer();
+        for (ClassResult result : results.values()) {
+            int dit = hierarchyIndex.getDit(result.getClassName(), result.getSuperclassName());
+            ClassMetrics classMetrics = container.getVisitedMetrics(result.getClassName());
+            if (dit != HierarchyIndex.UNRESOLVED && classMetrics != null && classMetrics.getDit() != dit) {
+                classMetrics.setDit(dit);
+                affected.add(result.getClassName());
+            }
+        }
+    }
+
+    /** Stop watching the directories; a pending update returns false. */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The options and class specifications of an analysis request,
+ * given on the command line or to the analysis server.
+ *
+ * @see MetricsFilter
+ * @see AnalysisServer
+ */
+class CommandOptions {
+    /** True if the measurements should include calls to the Java JDK into account (-s) */
+    boolean includeJdk;
+    /** True if the reports should only include public classes (-p) */
+    boolean onlyPublic;
+    /** True to output each class's metrics as soon as they are known (-e) */
+    boolean streaming;
+    /** Number of worker threads (-t) */
+    int threads = 1;
+    /** The file of the per-class result cache, or null (-c) */
+    String cacheFile;
+    /** The file where the results are written in binary format, or null (-b) */
+    String binaryFile;
+    /** The memory budget in megabytes for coupling data, or 0 for none (-l) */
+    int memoryBudget;
+    /** True if identical class files are processed only once (-u) */
+    boolean deduplicate;
+    /** The file where partial results are written, or null (-w) */
+    String partialFile;
+    /** The index of the shard of classes processed (-k) */
+    int shardIndex = 0;
+    /** The number of shards among which the classes are divided (-k) */
+    int shardCount = 1;
+    /** True if the class specifications are partial result files to merge (merge command) */
+    boolean merge;
+    /** True if the class specifications are directories to watch for changes (watch command) */
+    boolean watch;
+    /** The file of the baseline with which the metrics are compared, or null (-r) */
+    String baselineFile;
+    /** The changes beyond which classes differ from the baseline, or null for any change (-v) */
+    Thresholds thresholds;
+    /** The file where the aggregate metrics of packages are written, or null (-a) */
+    String packageFile;
+    /** The file where statistics are written, or null (-m) */
+    String statisticsFile;
+    /** The port on which to serve analysis requests, or -1 (-d) */
+    int serverPort = -1;
+    /** The class specifications following the options */
+    final List<String> classSpecs = new ArrayList<>();
+
+    /**
+     * Parse the specified arguments.
+     * A command, merge or watch, can appear before, among, or after
+     * the options; the first other argument starts the class specifications.
+     * @throws IllegalArgumentException if an option's value is invalid
+     */
+    static CommandOptions parse(List<String> args) {
+        CommandOptions options = new CommandOptions();
+        int argp = 0;
+
+        for (; argp < args.size(); argp++) {
+            String arg = args.get(argp);
+            boolean hasValue = argp + 1 < args.size();
+            boolean command = options.merge || options.watch;
+            if (arg.equals("merge") && !command)
+                options.merge = true;
+            else if (arg.equals("watch") && !command)
+                options.watch = true;
+            else if (arg.equals("-s"))
+                options.includeJdk = true;
+            else if (arg.equals("-p"))
+                options.onlyPublic = true;
+            else if (arg.equals("-e"))
+                options.streaming = true;
+            else if (arg.equals("-t") && hasValue) {
+                options.threads = parseNumber(args.get(++argp), "number of threads");
+                if (options.threads <= 0)
+                    options.threads = Runtime.getRuntime().availableProcessors();
+            } else if (arg.equals("-c") && hasValue)
+                options.cacheFile = args.get(++argp);
+            else if (arg.equals("-b") && hasValue)
+                options.binaryFile = args.get(++argp);
+            else if (arg.equals("-l") && hasValue) {
+                options.memoryBudget = parseNumber(args.get(++argp), "memory budget");
+                if (options.memoryBudget <= 0)
+                    throw new IllegalArgumentException("Invalid memory budget: " + options.memoryBudget);
+            } else if (arg.equals("-u"))
+                options.deduplicate = true;
+            else if (arg.equals("-w") && hasValue)
+                options.partialFile = args.get(++argp);
+            else if (arg.equals("-k") && hasValue) {
+                String shard = args.get(++argp);
+                int slash = shard.indexOf('/');
+                if (slash == -1)
+                    throw new IllegalArgumentException("Invalid shard: " + shard);
+                options.shardIndex = parseNumber(shard.substring(0, slash), "shard");
+                options.shardCount = parseNumber(shard.substring(slash + 1), "shard");
+                if (options.shardCount < 1 || options.shardIndex < 0 || options.shardIndex >= options.shardCount)
+                    throw new IllegalArgumentException("Invalid shard: " + shard);
+            } else if (arg.equals("-r") && hasValue)
+                options.baselineFile = args.get(++argp);
+            else if (arg.equals("-v") && hasValue)
+                options.thresholds = Thresholds.parse(args.get(++argp));
+            else if (arg.equals("-a") && hasValue)
+                options.packageFile = args.get(++argp);
+            else if (arg.equals("-m") && hasValue)
+                options.statisticsFile = args.get(++argp);
+            else if (arg.equals("-d") && hasValue)
+                options.serverPort = parseNumber(args.get(++argp), "port");
+            else
+                break;
+        }
+        if (options.streaming && options.binaryFile != null)
+            throw new IllegalArgumentException("Options -b and -e cannot be combined");
+        if (options.streaming && options.memoryBudget > 0)
+            throw new IllegalArgumentException("Options -l and -e cannot be combined");
+        if (options.partialFile != null && (options.streaming || options.binaryFile != null || options.merge))
+            throw new IllegalArgumentException("Option -w cannot be combined with -b, -e, or merge");
+        if (options.partialFile != null && options.packageFile != null)
+            throw new IllegalArgumentException("Options -a and -w cannot be combined");
+        if (options.thresholds != null && options.baselineFile == null)
+            throw new IllegalArgumentException("Option -v requires -r");
+        if (options.baselineFile != null && (options.streaming || options.binaryFile != null || options.partialFile != null))
+            throw new IllegalArgumentException("Option -r cannot be combined with -b, -e, or -w");
+        /* The watcher analyzes class files one at a time */
+        if (options.watch && (options.streaming || options.binaryFile != null || options.partialFile != null ||
+                options.threads != 1 || options.memoryBudget > 0 || options.deduplicate || options.shardCount > 1 ||
+                options.cacheFile != null || options.baselineFile != null || options.packageFile != null ||
+                options.statisticsFile != null || options.serverPort >= 0))
+            throw new IllegalArgumentException("Command watch can only be combined with options -s and -p");
+        options.classSpecs.addAll(args.subList(argp, args.size()));
+        return options;
+    }
+
+    /**
+     * Parse the specified arguments of an analysis server request.
+     * A request can only contain the options -s, -p, and -e, followed
+     * by class specifications; the other options, which write files
+     * or use the server's resources, are rejected.
+     * @throws IllegalArgumentException if another option or a command is specified
+     */
+    static CommandOptions parseRequest(List<String> args) {
+        for (String arg : args) {
+            if (arg.equals("-s") || arg.equals("-p") || arg.equals("-e"))
+                continue;
+            if (arg.startsWith("-"))
+                throw new IllegalArgumentException("Option " + arg + " is not valid in requests");
+            if (arg.equals("merge") || arg.equals("watch"))
+                throw new IllegalArgumentException("Command " + arg + " is not valid in requests");
+            break;
+        }
+        return parse(args);
+    }
+
+    /** Return the value of a numeric option. */
+    private static int parseNumber(String value, String description) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + description + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The SHA-1 digest of a class file's contents.
+ * Class files with equal hashes are taken to be identical,
+ * and therefore to have the same metrics.
+ *
+ * @see ResultCache
+ */
+final class ContentHash {
+    /** The digest algorithm; every Java platform provides it */
+    private static final String ALGORITHM = "SHA-1";
+    /** Length of the digest in bytes */
+    static final int LENGTH = 20;
+
+    /** The digest's bytes */
+    private final byte[] digest;
+
+    private ContentHash(byte[] digest) {
+        this.digest = digest;
+    }
+
+    /** Return the hash of the specified class file contents. */
+    static ContentHash of(byte[] classBytes) {
+        try {
+            return new ContentHash(MessageDigest.getInstance(ALGORITHM).digest(classBytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported", e);
+        }
+    }
+
+    /** Write the hash to the specified output. */
+    void write(DataOutput out) throws IOException {
+        out.write(digest);
+    }
+
+    /** Read a hash written by write from the specified input. */
+    static ContentHash read(DataInput in) throws IOException {
+        byte[] digest = new byte[LENGTH];
+        in.readFully(digest);
+        return new ContentHash(digest);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ContentHash && Arrays.equals(digest, ((ContentHash)o).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        /* The digest is already uniformly distributed */
+        return (digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 |
+            (digest[2] & 0xff) << 8 | (digest[3] & 0xff);
+    }
+
+    /** Return the hash in hexadecimal */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(LENGTH * 2);
+        for (byte b : digest)
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+              .append(Character.forDigit(b & 0xf, 16));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.util.ClassPath;
+import org.apache.bcel.util.ClassPathRepository;
+import org.apache.bcel.util.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A memoizing index of the class hierarchy, used for calculating
+ * the depth of inheritance tree (DIT) metric.
+ * The depth of each class is calculated once, by loading it
+ * through a repository; descendants reuse the depths of their
+ * ancestors.
+ * Classes that cannot be loaded are also remembered, so that
+ * they are looked up only once.
+ * The index can be queried concurrently.
+ *
+ * @see ClassVisitor
+ */
+public class HierarchyIndex {
+    /** Depth of classes with superclasses that cannot be loaded */
+    public static final int UNRESOLVED = -1;
+
+    /** The name of the inheritance tree's root */
+    private static final String ROOT = "java.lang.Object";
+
+    /** The repository through which classes are loaded */
+    private final Repository repository;
+    /** The runtime image from which JDK superclasses are read, or null */
+    private final RuntimeImage runtimeImage;
+    /** Map from class names to the number of their superclasses */
+    private final Map<String, Integer> depths = new ConcurrentHashMap<>();
+
+    /** Create an index of the classes available through the specified repository. */
+    public HierarchyIndex(Repository repository) {
+        this(repository, null);
+    }
+
+    /**
+     * Create an index of the classes available through the specified
+     * repository, reading the classes of the platform modules directly
+     * from the specified runtime image, if not null.
+     */
+    HierarchyIndex(Repository repository, RuntimeImage runtimeImage) {
+        this.repository = repository;
+        this.runtimeImage = runtimeImage;
+    }
+
+    /**
+     * Create an index of the classes of the system class path and,
+     * on Java 9 and later, of the running JVM's runtime image.
+     */
+    static HierarchyIndex forSystemClassPath() {
+        return new HierarchyIndex(new ClassPathRepository(ClassPath.SYSTEM_CLASS_PATH), RuntimeImage.getSystem());
+    }
+
+    /**
+     * Create an index of the classes of the specified class path and,
+     * on Java 9 and later, of the running JVM's runtime image.
+     * Unlike the system class path, the class path affects only
+     * the sessions using the index.
+     */
+    public static HierarchyIndex forClassPath(String classPath) {
+        return new HierarchyIndex(new ClassPathRepository(new ClassPath(classPath)), RuntimeImage.getSystem());
+    }
+
+    /** Return the repository through which classes are loaded */
+    public Repository getRepository() { return repository; }
+
+    /**
+     * Forget the depths of all classes, so that they are resolved again,
+     * for example after classes of the class path have been recompiled.
+     */
+    public void clear() {
+        depths.clear();
+    }
+
+    /**
+     * Return the depth of the specified class in the inheritance tree,
+     * or UNRESOLVED if some of its superclasses cannot be loaded.
+     * The class itself need not be available through the repository.
+     */
+    public int getDit(JavaClass javaClass) {
+        return getDit(javaClass.getClassName(), javaClass.getSuperclassName());
+    }
+
+    /**
+     * Return the depth in the inheritance tree of the named class
+     * with the specified superclass, or UNRESOLVED if some of its
+     * superclasses cannot be loaded.
+     */
+    public int getDit(String className, String superclassName) {
+        if (className.equals(ROOT))
+            return 0;
+        int superDepth = getDepth(superclassName);
+        return superDepth == UNRESOLVED ? UNRESOLVED : superDepth + 1;
+    }
+
+    /**
+     * Return the number of superclasses of the named class,
+     * or UNRESOLVED if it or some of its superclasses cannot be loaded.
+     */
+    public int getDepth(String className) {
+        Integer depth = depths.get(className);
+        if (depth != null)
+            return depth;
+        /* The repository is not thread-safe */
+        synchronized (this) {
+            return resolve(className);
+        }
+    }
+
+    /**
+     * Walk up the inheritance chain of the named class until a
+     * class of known depth is found, and record the depths of all
+     * classes on the way.
+     */
+    private int resolve(String className) {
+        List<String> chain = new ArrayList<>();
+        int depth;
+
+        for (String name = className; ; ) {
+            Integer known = depths.get(name);
+            if (known != null) {
+                depth = known;
+                break;
+            }
+            if (chain.contains(name)) {
+                /* Circular inheritance in a malformed class path */
+                depth = UNRESOLVED;
+                break;
+            }
+            /* Platform classes cannot be overridden by the class path */
+            String superclassName = runtimeImage == null ? null : runtimeImage.getSuperclassName(name);
+            if (superclassName == null) {
+                JavaClass javaClass;
+                try {
+                    javaClass = repository.loadClass(name);
+                } catch (ClassNotFoundException e) {
+                    depths.put(name, UNRESOLVED);
+                    depth = UNRESOLVED;
+                    break;
+                }
+                /* Only the superclass name is needed; the index remembers the rest */
+                repository.removeClass(javaClass);
+                superclassName = javaClass.getSuperclassName();
+            }
+            if (name.equals(ROOT)) {
+                depths.put(name, 0);
+                depth = 0;
+                break;
+            }
+            chain.add(name);
+            name = superclassName;
+        }
+
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            if (depth != UNRESOLVED)
+                depth++;
+            depths.put(chain.get(i), depth);
+        }
+        return depth;
+    }
+}
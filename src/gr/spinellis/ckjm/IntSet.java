@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative integers, such as class identifiers.
+ * The values are stored in an open addressing hash table of
+ * primitive ints, avoiding the boxing and per-element objects
+ * of a HashSet.
+ * The set is not thread-safe.
+ *
+ * @see SymbolTable
+ */
+class IntSet {
+    /** Marker of unused table slots */
+    private static final int FREE = -1;
+
+    /** The hash table; its length is a power of two */
+    private int[] table;
+    /** Number of elements in the set */
+    private int size;
+
+    /** Create an empty set. */
+    IntSet() {
+        table = new int[4];
+        Arrays.fill(table, FREE);
+    }
+
+    /** Return the slot where the value's probe sequence starts. */
+    private static int home(int[] table, int value) {
+        /* Fibonacci hashing: take the top bits of the product */
+        return (value * 0x9E3779B9) >>> Integer.numberOfLeadingZeros(table.length - 1);
+    }
+
+    /** Return the table slot where the value is or should be stored. */
+    private static int slot(int[] table, int value) {
+        int mask = table.length - 1;
+        int i = home(table, value);
+        while (table[i] != FREE && table[i] != value)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /** Add a value to the set; return true if it was not already there. */
+    boolean add(int value) {
+        int i = slot(table, value);
+        if (table[i] == value)
+            return false;
+        table[i] = value;
+        /* Keep the load factor at most 1/2 */
+        if (++size * 2 > table.length) {
+            int[] old = table;
+            table = new int[old.length * 2];
+            Arrays.fill(table, FREE);
+            for (int v : old)
+                if (v != FREE)
+                    table[slot(table, v)] = v;
+        }
+        return true;
+    }
+
+    /** Remove a value from the set; return true if it was there. */
+    boolean remove(int value) {
+        int i = slot(table, value);
+        if (table[i] != value)
+            return false;
+        /*
+         * Move back the following values of the probe sequence
+         * that would no longer be found past the freed slot
+         */
+        int mask = table.length - 1;
+        for (int j = (i + 1) & mask; table[j] != FREE; j = (j + 1) & mask) {
+            int distance = (j - home(table, table[j])) & mask;
+            if (distance >= ((j - i) & mask)) {
+                table[i] = table[j];
+                i = j;
+            }
+        }
+        table[i] = FREE;
+        size--;
+        return true;
+    }
+
+    /** Return true if the set contains the specified value. */
+    boolean contains(int value) {
+        return table[slot(table, value)] == value;
+    }
+
+    /** Return the number of elements in the set. */
+    int size() { return size; }
+
+    /** Return the set's elements, in no particular order. */
+    int[] toArray() {
+        int[] values = new int[size];
+        int n = 0;
+        for (int v : table)
+            if (v != FREE)
+                values[n++] = v;
+        return values;
+    }
+}
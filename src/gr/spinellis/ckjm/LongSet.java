@@ -0,0 +1,79 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative longs, such as pairs of identifiers.
+ * The values are stored in an open addressing hash table of
+ * primitive longs, in the same way as in IntSet.
+ * The set is not thread-safe.
+ *
+ * @see IntSet
+ */
+class LongSet {
+    /** Marker of unused table slots */
+    private static final long FREE = -1;
+
+    /** The hash table; its length is a power of two */
+    private long[] table;
+    /** Number of elements in the set */
+    private int size;
+
+    /** Create an empty set. */
+    LongSet() {
+        table = new long[4];
+        Arrays.fill(table, FREE);
+    }
+
+    /** Return the table slot where the value is or should be stored. */
+    private static int slot(long[] table, long value) {
+        int mask = table.length - 1;
+        /* Fibonacci hashing: take the top bits of the product */
+        int i = (int)((value * 0x9E3779B97F4A7C15L) >>> Long.numberOfLeadingZeros(mask));
+        while (table[i] != FREE && table[i] != value)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    /** Add a value to the set; return true if it was not already there. */
+    boolean add(long value) {
+        int i = slot(table, value);
+        if (table[i] == value)
+            return false;
+        table[i] = value;
+        /* Keep the load factor at most 1/2 */
+        if (++size * 2 > table.length) {
+            long[] old = table;
+            table = new long[old.length * 2];
+            Arrays.fill(table, FREE);
+            for (long v : old)
+                if (v != FREE)
+                    table[slot(table, v)] = v;
+        }
+        return true;
+    }
+
+    /** Return true if the set contains the specified value. */
+    boolean contains(long value) {
+        return table[slot(table, value)] == value;
+    }
+
+    /** Return the number of elements in the set. */
+    int size() { return size; }
+}
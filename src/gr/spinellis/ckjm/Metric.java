@@ -0,0 +1,55 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+/**
+ * The metrics reported for each class, in the order of ckjm's output.
+ *
+ * @see ClassMetrics
+ */
+public enum Metric {
+    /** Weighted methods per class */
+    WMC,
+    /** Depth of inheritance tree */
+    DIT,
+    /** Number of children */
+    NOC,
+    /** Coupling between object classes */
+    CBO,
+    /** Response for a class */
+    RFC,
+    /** Lack of cohesion in methods */
+    LCOM,
+    /** Afferent couplings */
+    CA,
+    /** Number of public methods */
+    NPM;
+
+    /** Return the value of the metric in the specified class metrics. */
+    public int get(ClassMetrics c) {
+        switch (this) {
+        case WMC: return c.getWmc();
+        case DIT: return c.getDit();
+        case NOC: return c.getNoc();
+        case CBO: return c.getCbo();
+        case RFC: return c.getRfc();
+        case LCOM: return c.getLcom();
+        case CA: return c.getCa();
+        case NPM: return c.getNpm();
+        default: throw new AssertionError(this);
+        }
+    }
+}
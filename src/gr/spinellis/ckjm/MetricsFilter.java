@@ -16,117 +16,302 @@
 
 package gr.spinellis.ckjm;
 
-import org.apache.bcel.classfile.JavaClass;
-import org.apache.bcel.util.ClassParser;
-
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Convert a list of classes into their metrics.
  * Process standard input lines or command line arguments
  * containing a class file name or a jar file name,
- * followed by a space and a class file name.
+ * optionally followed by a space and a class file name,
+ * or the name of a directory containing class files,
+ * or a JMOD file, or jrt:/ followed by the name of a platform module.
  * Display on the standard output the name of each class, followed by its
  * six Chidamber Kemerer metrics:
  * WMC, DIT, NOC, CBO, RFC, LCOM
+ * Classes can be processed by multiple worker threads (-t option);
+ * the results are the same as those of a serial run.
+ * The per-class results can be kept in a cache file (-c option),
+ * so that classes that have not changed since the previous run
+ * need not be analyzed again.
+ * With the -e option each class's own metrics are output as soon as
+ * it is processed, followed at the end by the metrics that depend
+ * on other classes.
+ * With the -u option class files identical to already processed ones,
+ * such as library classes copied into several jars, are skipped.
+ * The -l option keeps the coupling data within a memory budget,
+ * spilling the rest to a temporary file.
+ * An analysis can be divided among several processes (-k option),
+ * each writing its results to a partial results file (-w option);
+ * the merge command then combines the partial results into the
+ * metrics of all classes.
+ * The -b option writes the metrics to a file in a compact binary format,
+ * which can be read through BinaryResultsReader.
+ * The -r option compares the metrics with those of a previous run,
+ * printing only the classes that were added, removed, or whose metrics
+ * changed beyond the thresholds given with the -v option.
+ * The -a option writes the aggregate metrics of each package to a file.
+ * The -m option writes statistics of the analysis's phases to a file.
+ * The watch command prints the metrics of the classes under
+ * directories, and then prints again the metrics that change
+ * as their class files are recompiled; see ClassWatcher.
+ * With the -d option the filter instead serves analysis requests
+ * on a local port; see AnalysisServer.
  *
  * @see ClassMetrics
+ * @see AnalysisSession
  * @version $Revision: 1.9 $
  * @author &lt;a href=&quot;http://www.spinellis.gr&quot;&gt;Diomidis Spinellis&lt;/a&gt;
  */
 public class MetricsFilter {
-    /** True if the measurements should include calls to the Java JDK into account */
-    private static boolean includeJdk = false;
+    /**
+     * The interface for other Java based applications.
+     * Implement the outputhandler to catch the results
+     *
+     * @param files Class or jar files to be analyzed
+     * @param outputHandler An implementation of the CkjmOutputHandler interface
+     */
+    public static void runMetrics(String[] files, CkjmOutputHandler outputHandler) {
+        runMetrics(files, outputHandler, 1);
+    }
 
-    /** True if the reports should only include public classes */
-    private static boolean onlyPublic = false;
+    /**
+     * The interface for other Java based applications,
+     * analyzing the classes in parallel.
+     *
+     * @param files Class or jar files to be analyzed
+     * @param outputHandler An implementation of the CkjmOutputHandler interface
+     * @param threads Number of worker threads to use
+     */
+    public static void runMetrics(String[] files, CkjmOutputHandler outputHandler, int threads) {
+        AnalysisSession session = new AnalysisSession();
 
-    /** Return true if the measurements should include calls to the Java JDK into account */
-    public static boolean isJdkIncluded() { return includeJdk; }
-    /** Return true if the measurements should include all classes */
-    public static boolean includeAll() { return !onlyPublic; }
+        session.setThreads(threads);
+        session.processClasses(Arrays.asList(files));
+        session.printMetrics(outputHandler);
+    }
 
     /**
-     * Load and parse the specified class.
-     * The class specification can be either a class file name, or
-     * a jarfile, followed by space, followed by a class file name.
+     * Analyze the classes specified in the options, printing their
+     * metrics on the specified stream.
+     * @param hierarchyIndex The index used for resolving superclasses,
+     * or null to use one of the system class path
+     * @param statistics The statistics where the analysis's phases are
+     * recorded, or null to keep them only for the -m option
+     * @return False if the analysis could not be performed because
+     * its baseline or partial results file could not be opened,
+     * or a partial results file to merge could not be read
      */
-    static void processClass(ClassMetricsContainer cm, String classSpec) {
-        int spaceIndex = classSpec.indexOf(' ');
-        JavaClass javaClass;
+    static boolean analyze(CommandOptions options, HierarchyIndex hierarchyIndex,
+            AnalysisStatistics statistics, PrintStream out) {
+        AnalysisSession session = hierarchyIndex == null ?
+            new AnalysisSession(options.includeJdk, options.onlyPublic) :
+            new AnalysisSession(options.includeJdk, options.onlyPublic, hierarchyIndex);
+        session.setThreads(options.threads);
+        ResultCache cache = null;
+        if (options.cacheFile != null) {
+            cache = new ResultCache(new File(options.cacheFile), options.includeJdk);
+            session.setResultCache(cache);
+        }
+        if (options.streaming)
+            session.setStreamingOutput(new PrintStreamingResults(out));
+        if (statistics == null && options.statisticsFile != null)
+            statistics = new AnalysisStatistics();
+        session.setStatistics(statistics);
+        session.setShard(options.shardIndex, options.shardCount);
+        session.setDeduplication(options.deduplicate);
+        if (options.memoryBudget > 0)
+            session.setMemoryBudget(options.memoryBudget * 1024L * 1024);
+        session.setPackageMetrics(options.packageFile != null);
+        Baseline baseline = null;
+        if (options.baselineFile != null) {
+            try {
+                baseline = Baseline.load(new File(options.baselineFile));
+            } catch (IOException e) {
+                System.err.println("Error loading baseline " + options.baselineFile + ": " + e);
+                return false;
+            }
+        }
+        PartialResults partialResults = null;
+        if (options.partialFile != null) {
+            try {
+                partialResults = new PartialResults(new File(options.partialFile), options.includeJdk);
+            } catch (IOException e) {
+                System.err.println("Error creating " + options.partialFile + ": " + e);
+                return false;
+            }
+            session.setPartialResults(partialResults);
+        }
 
-        if (spaceIndex != -1) {
-            String jarPath = classSpec.substring(0, spaceIndex);
-            String className = classSpec.substring(spaceIndex + 1);
+        if (options.merge) {
+            for (String partialFile : options.classSpecs) {
+                try {
+                    session.mergePartialResults(new File(partialFile));
+                } catch (IOException e) {
+                    /* Output without a shard's classes would look complete */
+                    System.err.println("Error loading " + partialFile + ": " + e);
+                    return false;
+                }
+            }
+        } else
+            session.processClasses(options.classSpecs);
+        if (session.getDuplicates() > 0)
+            System.err.println("Skipped " + session.getDuplicates() + " class files identical to processed ones");
+        if (cache != null) {
             try {
-                javaClass = new ClassParser(jarPath, className).parse();
+                cache.save();
             } catch (IOException e) {
-                System.err.println("Error loading " + className + " from " + jarPath + ": " + e);
-                return;
+                System.err.println("Error saving cache " + options.cacheFile + ": " + e);
             }
-        } else {
+        }
+
+        if (partialResults != null) {
             try {
-                javaClass = new ClassParser(classSpec).parse();
+                partialResults.close();
             } catch (IOException e) {
-                System.err.println("Error loading " + classSpec + ": " + e);
-                return;
+                System.err.println("Error writing " + options.partialFile + ": " + e);
             }
+        } else if (options.streaming)
+            session.finishStreamingOutput();
+        else if (options.binaryFile != null)
+            writeBinary(session, options.binaryFile);
+        else if (baseline != null) {
+            BaselineDiff diff = new BaselineDiff(baseline,
+                options.thresholds == null ? Thresholds.anyChange() : options.thresholds, out);
+            session.printMetrics(diff);
+            diff.finish();
+        } else {
+            CkjmOutputHandler handler = new PrintPlainResults(out);
+            session.printMetrics(handler);
         }
+        if (options.packageFile != null)
+            writePackageMetrics(session, options.packageFile);
+        if (options.statisticsFile != null)
+            writeStatistics(statistics, options.statisticsFile);
+        return true;
+    }
 
-        if (javaClass != null) {
-            ClassVisitor visitor = new ClassVisitor(javaClass, cm);
-            visitor.start();
-            visitor.end();
+    /** Write the session's metrics to the named file in binary format. */
+    private static void writeBinary(AnalysisSession session, String fileName) {
+        try (OutputStream out = new FileOutputStream(fileName)) {
+            PrintBinaryResults handler = new PrintBinaryResults(out);
+            session.printMetrics(handler);
+            handler.finish();
+        } catch (IOException e) {
+            System.err.println("Error writing results " + fileName + ": " + e);
         }
     }
 
     /**
-     * The interface for other Java based applications.
-     * Implement the outputhandler to catch the results
-     *
-     * @param files Class files to be analyzed
-     * @param outputHandler An implementation of the CkjmOutputHandler interface
+     * Write the statistics to the named file, as JSON if its name
+     * ends in .json, or in the Prometheus text format otherwise.
      */
-    public static void runMetrics(String[] files, CkjmOutputHandler outputHandler) {
-        ClassMetricsContainer cm = new ClassMetricsContainer();
+    private static void writeStatistics(AnalysisStatistics statistics, String fileName) {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8)) {
+            if (fileName.endsWith(".json"))
+                statistics.writeJson(writer);
+            else
+                statistics.writePrometheus(writer);
+        } catch (IOException e) {
+            System.err.println("Error writing statistics " + fileName + ": " + e);
+        }
+    }
 
-        for (String file : files)
-            processClass(cm, file);
-        cm.printMetrics(outputHandler);
+    /**
+     * Print the metrics of the classes under the specified directories,
+     * and then, after each batch of changes to their class files,
+     * the metrics of the affected classes, followed by an empty line.
+     */
+    private static void watch(CommandOptions options, PrintStream out) {
+        AnalysisSession session = new AnalysisSession(options.includeJdk, options.onlyPublic);
+        List<Path> roots = new ArrayList<>();
+        for (String classSpec : options.classSpecs)
+            roots.add(Paths.get(classSpec));
+        CkjmOutputHandler outputHandler = new PrintPlainResults(out);
+        try (ClassWatcher watcher = new ClassWatcher(session, roots)) {
+            session.printMetrics(outputHandler);
+            do {
+                out.println();
+                out.flush();
+            } while (watcher.update(outputHandler));
+        } catch (IOException e) {
+            System.err.println("Error watching " + options.classSpecs + ": " + e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write the aggregate metrics of the session's packages to the
+     * specified file, as JSON if its name ends in .json and as
+     * plain text otherwise.
+     */
+    private static void writePackageMetrics(AnalysisSession session, String fileName) {
+        PackageMetricsContainer packageMetrics = session.getContainer().getPackageMetrics();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(fileName), StandardCharsets.UTF_8)) {
+            if (fileName.endsWith(".json"))
+                packageMetrics.writeJson(writer);
+            else
+                packageMetrics.writePlain(writer);
+        } catch (IOException e) {
+            System.err.println("Error writing package metrics " + fileName + ": " + e);
+        }
     }
 
     /** The filter's main body.
      * Process command line arguments and the standard input.
      */
     public static void main(String[] argv) {
-        int argp = 0;
+        CommandOptions options = null;
+        try {
+            options = CommandOptions.parse(Arrays.asList(argv));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
 
-        if (argv.length > argp && argv[argp].equals("-s")) {
-            includeJdk = true;
-            argp++;
+        if (options.serverPort >= 0) {
+            try (AnalysisServer server = new AnalysisServer(options.serverPort)) {
+                System.err.println("Listening on port " + server.getPort());
+                server.serve();
+            } catch (IOException e) {
+                System.err.println("Error serving requests: " + e);
+                System.exit(1);
+            }
+            return;
         }
-        if (argv.length > argp && argv[argp].equals("-p")) {
-            onlyPublic = true;
-            argp++;
+
+        if (options.watch) {
+            watch(options, System.out);
+            return;
         }
-        ClassMetricsContainer cm = new ClassMetricsContainer();
 
-        if (argv.length == argp) {
+        if (options.classSpecs.isEmpty()) {
             BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 			try {
 			String s;
 			while ((s = in.readLine()) != null)
-				processClass(cm, s);
+				options.classSpecs.add(s);
 			} catch (Exception e) {
 			System.err.println("Error reading line: " + e);
 			System.exit(1);
 			}
-        } else {
-            for (int i = argp; i < argv.length; i++)
-                processClass(cm, argv[i]);
         }
-
-        CkjmOutputHandler handler = new PrintPlainResults(System.out);
-        cm.printMetrics(handler);
+        if (!analyze(options, null, null, System.out))
+            System.exit(1);
     }
 }
@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+/**
+ * The aggregate metrics of the analyzed classes of a package:
+ * the sum, mean, and maximum of their WMC, CBO, RFC, and LCOM,
+ * the package's afferent and efferent couplings, and its instability.
+ * A package's afferent couplings (Ca) are the number of other packages
+ * with classes using its classes, and its efferent couplings (Ce)
+ * the number of other packages whose classes its classes use.
+ * The metrics are updated as each class is added.
+ *
+ * @see PackageMetricsContainer
+ */
+public class PackageMetrics {
+    /** The metrics that are aggregated */
+    static final Metric[] AGGREGATED = { Metric.WMC, Metric.CBO, Metric.RFC, Metric.LCOM };
+
+    /** Number of classes */
+    private int classes;
+    /** Sum of each aggregated metric, in the order of AGGREGATED */
+    private final long[] sums = new long[AGGREGATED.length];
+    /** Maximum of each aggregated metric, in the order of AGGREGATED */
+    private final int[] maxima = new int[AGGREGATED.length];
+    /** Identifiers of the packages using this package */
+    private final IntSet afferent = new IntSet();
+    /** Identifiers of the packages this package uses */
+    private final IntSet efferent = new IntSet();
+
+    /** Return the position of the metric in AGGREGATED. */
+    private static int index(Metric metric) {
+        switch (metric) {
+        case WMC: return 0;
+        case CBO: return 1;
+        case RFC: return 2;
+        case LCOM: return 3;
+        default: throw new IllegalArgumentException("Metric " + metric + " is not aggregated");
+        }
+    }
+
+    /** Add a class's metrics to the aggregates. */
+    synchronized void addClass(ClassResult result) {
+        classes++;
+        int[] values = {
+            result.getWmc(), result.getEfferentCoupledClasses().length, result.getRfc(), result.getLcom()
+        };
+        for (int i = 0; i < values.length; i++) {
+            sums[i] += values[i];
+            if (classes == 1 || values[i] > maxima[i])
+                maxima[i] = values[i];
+        }
+    }
+
+    /** Record that the package with the specified identifier uses this package. */
+    synchronized void addAfferent(int packageId) { afferent.add(packageId); }
+    /** Record that this package uses the package with the specified identifier. */
+    synchronized void addEfferent(int packageId) { efferent.add(packageId); }
+
+    /** Return the number of the package's analyzed classes */
+    public synchronized int getClasses() { return classes; }
+    /** Return the sum of a metric (WMC, CBO, RFC, or LCOM) over the package's classes */
+    public synchronized long getSum(Metric metric) { return sums[index(metric)]; }
+    /** Return the maximum of a metric (WMC, CBO, RFC, or LCOM) over the package's classes */
+    public synchronized int getMax(Metric metric) { return maxima[index(metric)]; }
+    /** Return the number of other packages using the package */
+    public synchronized int getCa() { return afferent.size(); }
+    /** Return the number of other packages the package uses */
+    public synchronized int getCe() { return efferent.size(); }
+
+    /** Return the mean of a metric (WMC, CBO, RFC, or LCOM) over the package's classes. */
+    public synchronized double getMean(Metric metric) {
+        return classes == 0 ? 0 : (double)sums[index(metric)] / classes;
+    }
+
+    /**
+     * Return the package's instability, Ce / (Ca + Ce), from 0 for
+     * a package that is only used to 1 for one that only uses others.
+     */
+    public synchronized double getInstability() {
+        int ca = afferent.size();
+        int ce = efferent.size();
+        return ca + ce == 0 ? 0 : (double)ce / (ca + ce);
+    }
+}
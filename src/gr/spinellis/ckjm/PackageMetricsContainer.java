@@ -0,0 +1,139 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A container of the aggregate metrics of packages, updated as each
+ * class's result is added to the class metrics container, so that
+ * no further pass over the classes is needed.
+ * The container can be updated concurrently.
+ *
+ * @see ClassMetricsContainer#setPackageMetrics
+ * @see PackageMetrics
+ */
+class PackageMetricsContainer {
+    /** Name under which the classes of the unnamed package are output */
+    static final String DEFAULT_PACKAGE = "(default)";
+
+    /** The identifiers of the package names used in coupling sets */
+    private final SymbolTable packages = new SymbolTable();
+    /** The map from package names to their metrics, including packages only used */
+    private final Map<String, PackageMetrics> packageMetricsMap = new ConcurrentHashMap<>();
+
+    /** Return the name of the package of the named class. */
+    static String packageName(String className) {
+        int dot = className.lastIndexOf('.');
+        return dot == -1 ? "" : className.substring(0, dot);
+    }
+
+    /** Return a package's metrics. */
+    private PackageMetrics getMetrics(String packageName) {
+        return packageMetricsMap.computeIfAbsent(packageName, key -> new PackageMetrics());
+    }
+
+    /** Add a class's result to the metrics of its package and of the packages it uses. */
+    void addResult(ClassResult result) {
+        String packageName = packageName(result.getClassName());
+        PackageMetrics packageMetrics = getMetrics(packageName);
+        packageMetrics.addClass(result);
+
+        int packageId = packages.intern(packageName);
+        String previous = packageName;
+        for (String className : result.getEfferentCoupledClasses()) {
+            String target = packageName(className);
+            /* Classes of the same package are often adjacent */
+            if (target.equals(previous) || target.equals(packageName))
+                continue;
+            previous = target;
+            packageMetrics.addEfferent(packages.intern(target));
+            getMetrics(target).addAfferent(packageId);
+        }
+    }
+
+    /** Return the metrics of the packages with analyzed classes, ordered by name. */
+    SortedMap<String, PackageMetrics> getPackages() {
+        SortedMap<String, PackageMetrics> result = new TreeMap<>();
+        for (Map.Entry<String, PackageMetrics> entry : packageMetricsMap.entrySet())
+            if (entry.getValue().getClasses() > 0)
+                result.put(entry.getKey(), entry.getValue());
+        return result;
+    }
+
+    /**
+     * Write the metrics of each package as a line of its name, number
+     * of classes, the sum, mean, and maximum of each aggregated metric,
+     * its Ca, Ce, and instability, after a header line naming them.
+     */
+    void writePlain(Writer out) throws IOException {
+        StringBuilder header = new StringBuilder("# package classes");
+        for (Metric metric : PackageMetrics.AGGREGATED) {
+            String name = metric.name().toLowerCase(Locale.ROOT);
+            header.append(' ').append(name).append("_sum ").append(name).append("_mean ").append(name).append("_max");
+        }
+        out.write(header.append(" ca ce instability\n").toString());
+        for (Map.Entry<String, PackageMetrics> entry : getPackages().entrySet()) {
+            PackageMetrics p = entry.getValue();
+            StringBuilder line = new StringBuilder(entry.getKey().isEmpty() ? DEFAULT_PACKAGE : entry.getKey());
+            line.append(' ').append(p.getClasses());
+            for (Metric metric : PackageMetrics.AGGREGATED)
+                line.append(' ').append(p.getSum(metric))
+                    .append(' ').append(format(p.getMean(metric)))
+                    .append(' ').append(p.getMax(metric));
+            line.append(' ').append(p.getCa()).append(' ').append(p.getCe())
+                .append(' ').append(format(p.getInstability())).append('\n');
+            out.write(line.toString());
+        }
+    }
+
+    /** Write the metrics of the packages as a JSON object keyed by package name. */
+    void writeJson(Writer out) throws IOException {
+        out.write("{");
+        String separator = "\n";
+        for (Map.Entry<String, PackageMetrics> entry : getPackages().entrySet()) {
+            PackageMetrics p = entry.getValue();
+            StringBuilder object = new StringBuilder(separator);
+            object.append("  \"").append(escape(entry.getKey())).append("\": {\"classes\": ").append(p.getClasses());
+            for (Metric metric : PackageMetrics.AGGREGATED)
+                object.append(", \"").append(metric.name().toLowerCase(Locale.ROOT)).append("\": {\"sum\": ")
+                    .append(p.getSum(metric)).append(", \"mean\": ").append(format(p.getMean(metric)))
+                    .append(", \"max\": ").append(p.getMax(metric)).append('}');
+            object.append(", \"ca\": ").append(p.getCa()).append(", \"ce\": ").append(p.getCe())
+                .append(", \"instability\": ").append(format(p.getInstability())).append('}');
+            out.write(object.toString());
+            separator = ",\n";
+        }
+        out.write("\n}\n");
+    }
+
+    /** Return a number formatted independently of the locale. */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /** Return a string escaped for inclusion in a JSON string. */
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file of the per-class results of part of an analysis.
+ * Each shard of a distributed analysis writes the results of its
+ * classes, with their depth of inheritance tree, as they are added.
+ * The partial results of all shards are then merged into a single
+ * container, which derives NOC and Ca across all shards in the same
+ * way as for a single analysis.
+ * Results can be written concurrently.
+ *
+ * @see AnalysisSession#setPartialResults
+ * @see AnalysisSession#mergePartialResults
+ */
+public class PartialResults implements Closeable {
+    /** Marker at the start of partial result files: "ckjp" */
+    private static final int MAGIC = 0x636b6a70;
+    /** Version of the partial result file format */
+    private static final int VERSION = 1;
+
+    /** The stream where results are written */
+    private final DataOutputStream out;
+
+    /**
+     * Create a file of partial results.
+     * @param includeJdk True if the results take JDK classes into account
+     */
+    public PartialResults(File file, boolean includeJdk) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeBoolean(includeJdk);
+    }
+
+    /** Write the result of a class with the specified depth of inheritance tree. */
+    synchronized void write(ClassResult result, int dit) {
+        try {
+            out.writeBoolean(true);
+            out.writeInt(dit);
+            result.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Mark the end of the results and close the file. */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.writeBoolean(false);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Add the results of the specified file to a container.
+     * The whole file is read before any result is added, so that
+     * the results of a truncated file are never merged.
+     * @param includeJdk The includeJdk setting the results must have been obtained with
+     */
+    static void read(File file, boolean includeJdk, ClassMetricsContainer container) throws IOException {
+        List<ClassResult> results = new ArrayList<>();
+        List<Integer> dits = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("Not a partial results file of this version");
+            if (in.readBoolean() != includeJdk)
+                throw new IOException("Partial results obtained with a different -s setting");
+            while (in.readBoolean()) {
+                dits.add(in.readInt());
+                results.add(ClassResult.read(in));
+            }
+            if (in.read() != -1)
+                throw new IOException("Data after the end of the partial results");
+        } catch (EOFException e) {
+            throw new IOException("Truncated partial results file", e);
+        }
+        for (int i = 0; i < results.size(); i++)
+            container.addResult(results.get(i), dits.get(i));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compact binary output formatter.
+ * The metrics of the handled classes are collected and written by
+ * finish as one array of values for each metric, followed by a table
+ * of the class names; BinaryResultsReader reads the format.
+ * All values are big-endian 32-bit integers; the layout is:
+ * <pre>
+ * magic ("ckjb"), version, number of classes n, number of metrics m
+ * m columns of n values, in the order of the Metric enumeration
+ * n + 1 offsets of the class names in the UTF-8 name bytes
+ * the UTF-8 bytes of the class names
+ * </pre>
+ * Classes are stored ordered by name.
+ *
+ * @see BinaryResultsReader
+ */
+public class PrintBinaryResults implements CkjmOutputHandler {
+    /** Marker at the start of the format: "ckjb" */
+    static final int MAGIC = 0x636b6a62;
+    /** Version of the format */
+    static final int VERSION = 1;
+    /** Size of the header in bytes */
+    static final int HEADER_SIZE = 16;
+
+    private final OutputStream outputStream;
+    /** Names of the handled classes */
+    private final List<String> classNames = new ArrayList<>();
+    /** Values of each metric, indexed by metric and class */
+    private int[][] columns = new int[Metric.values().length][256];
+
+    public PrintBinaryResults(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    public void handleClass(String className, ClassMetrics classMetrics) {
+        int n = classNames.size();
+        if (n == columns[0].length)
+            for (int m = 0; m < columns.length; m++)
+                columns[m] = Arrays.copyOf(columns[m], n * 2);
+        for (Metric metric : Metric.values())
+            columns[metric.ordinal()][n] = metric.get(classMetrics);
+        classNames.add(className);
+    }
+
+    /** Write the handled classes to the output stream and flush it. */
+    public void finish() throws IOException {
+        int n = classNames.size();
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparing(classNames::get));
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(n);
+        out.writeInt(columns.length);
+        for (int[] column : columns)
+            for (int i : order)
+                out.writeInt(column[i]);
+
+        byte[][] names = new byte[n][];
+        int offset = 0;
+        out.writeInt(offset);
+        for (int i = 0; i < n; i++) {
+            names[i] = classNames.get(order[i]).getBytes(StandardCharsets.UTF_8);
+            offset += names[i].length;
+            out.writeInt(offset);
+        }
+        for (byte[] name : names)
+            out.write(name);
+        out.flush();
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.PrintStream;
+
+/**
+ * Plain text output formatter for streamed metrics.
+ * Each class appears first with its WMC, DIT, CBO, RFC, LCOM, and NPM,
+ * and then, after all classes, with its NOC and Ca.
+ *
+ * @see CkjmStreamingOutputHandler
+ */
+public class PrintStreamingResults implements CkjmStreamingOutputHandler {
+    private final PrintStream printStream;
+
+    public PrintStreamingResults(PrintStream printStream) {
+        this.printStream = printStream;
+    }
+
+    public void handleOwnMetrics(String className, ClassMetrics c) {
+        printStream.println(className + " " + c.getWmc() + " " + c.getDit() + " " +
+            c.getCbo() + " " + c.getRfc() + " " + c.getLcom() + " " + c.getNpm());
+    }
+
+    public void handleCrossMetrics(String className, int noc, int ca) {
+        printStream.println(className + " " + noc + " " + ca);
+    }
+}
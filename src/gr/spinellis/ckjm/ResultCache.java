@@ -0,0 +1,166 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent cache of per-class results, keyed by the hash of
+ * the class file contents.
+ * Classes found in the cache need not be parsed and visited again;
+ * their results are added to the session's container, which derives
+ * the cross-class metrics in the same way as for visited classes.
+ * The cache is read when it is created and written by save;
+ * it then contains only the results used in the session, so that
+ * classes that no longer exist are dropped, unless the cache is
+ * shared by analyses of different classes.
+ * The cache can be used concurrently by the session's workers.
+ *
+ * @see AnalysisSession#setResultCache
+ * @see ClassResult
+ */
+public class ResultCache {
+    /** Marker at the start of cache files: "ckjc" */
+    private static final int MAGIC = 0x636b6a63;
+    /** Version of the cache file format */
+    private static final int VERSION = 1;
+
+    /** The file where the cache is stored */
+    private final File file;
+    /** True if the results take JDK classes into account */
+    private final boolean includeJdk;
+    /** Results read from the file */
+    private final Map<ContentHash, ClassResult> stored = new ConcurrentHashMap<>();
+    /** Results used in this session */
+    private final Map<ContentHash, ClassResult> used = new ConcurrentHashMap<>();
+    /** True if the results not used in this session are also saved */
+    private volatile boolean shared;
+    /** Number of classes found in the cache */
+    private final AtomicInteger hits = new AtomicInteger();
+    /** Number of classes not found in the cache */
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * Create a cache stored in the specified file, reading its
+     * existing contents.
+     * A missing or unreadable file, or one written with a different
+     * includeJdk setting, results in an empty cache.
+     *
+     * @param includeJdk True if the results take JDK classes into account
+     */
+    public ResultCache(File file, boolean includeJdk) {
+        this.file = file;
+        this.includeJdk = includeJdk;
+        if (file.exists()) {
+            try {
+                load();
+            } catch (IOException e) {
+                System.err.println("Ignoring cache " + file + ": " + e);
+                stored.clear();
+            }
+        }
+    }
+
+    /** Read the cache's file. */
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException("not a cache file of this version");
+            /* Results obtained with other options cannot be reused */
+            if (in.readBoolean() != includeJdk)
+                return;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                ContentHash hash = ContentHash.read(in);
+                stored.put(hash, ClassResult.read(in));
+            }
+        }
+    }
+
+    /** Return the cached result for the class with the specified hash, or null. */
+    ClassResult get(ContentHash hash) {
+        ClassResult result = stored.get(hash);
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        used.put(hash, result);
+        return result;
+    }
+
+    /** Add the result for the class with the specified hash. */
+    void put(ContentHash hash, ClassResult result) {
+        used.put(hash, result);
+    }
+
+    /**
+     * Specify whether the cache is shared by analyses of different
+     * classes, such as the modules of a project, and must then keep
+     * the results not used in this session.
+     */
+    public void setShared(boolean shared) { this.shared = shared; }
+
+    /** Return the number of classes found in the cache */
+    public int getHits() { return hits.get(); }
+    /** Return the number of classes not found in the cache */
+    public int getMisses() { return misses.get(); }
+
+    /**
+     * Write the results used in this session to the cache's file.
+     * The file is replaced atomically, so that an interrupted
+     * run leaves the previous cache intact.
+     */
+    public void save() throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile("ckjm", ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeBoolean(includeJdk);
+                Map<ContentHash, ClassResult> results = used;
+                if (shared) {
+                    results = new HashMap<>(stored);
+                    results.putAll(used);
+                }
+                out.writeInt(results.size());
+                for (Map.Entry<ContentHash, ClassResult> entry : results.entrySet()) {
+                    entry.getKey().write(out);
+                    entry.getValue().write(out);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+}
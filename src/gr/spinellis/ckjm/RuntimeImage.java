@@ -0,0 +1,196 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The classes of the Java platform modules, read from the runtime
+ * image of the running JVM through the jrt:/ file system.
+ * The image serves both as an input of classes to analyze and as
+ * a source of the superclasses of JDK classes, which are read
+ * without loading or fully parsing them.
+ * The image can be used concurrently.
+ *
+ * @see HierarchyIndex
+ * @see AnalysisSession#processClass
+ */
+class RuntimeImage {
+    /** Prefix of class specifications naming the runtime image or one of its modules */
+    static final String SCHEME = "jrt:/";
+
+    /** The image of the running JVM; null if it has none */
+    private static final RuntimeImage SYSTEM = open();
+
+    /** The image's file system */
+    private final FileSystem fileSystem;
+    /** Map from package names, with slashes, to the modules containing them */
+    private final Map<String, List<String>> packageModules = new ConcurrentHashMap<>();
+
+    private RuntimeImage(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+
+    /** Open the runtime image; return null if the JVM has none. */
+    private static RuntimeImage open() {
+        try {
+            return new RuntimeImage(FileSystems.getFileSystem(URI.create(SCHEME)));
+        } catch (FileSystemNotFoundException | ProviderNotFoundException e) {
+            /* Java 8 and earlier */
+            return null;
+        }
+    }
+
+    /** Return the runtime image of the running JVM, or null if it has none. */
+    static RuntimeImage getSystem() { return SYSTEM; }
+
+    /**
+     * Return the directory of the classes of the named module,
+     * or of all modules if the name is empty.
+     */
+    Path getModule(String moduleName) {
+        return moduleName.isEmpty() ? fileSystem.getPath("/modules") : fileSystem.getPath("/modules", moduleName);
+    }
+
+    /** Return the names of the modules containing the specified package. */
+    private List<String> getModules(String packageName) {
+        List<String> modules = packageModules.get(packageName);
+        if (modules != null)
+            return modules;
+        modules = new ArrayList<>();
+        Path packageDirectory = fileSystem.getPath("/packages", packageName.replace('/', '.'));
+        try (DirectoryStream<Path> links = Files.newDirectoryStream(packageDirectory)) {
+            for (Path link : links)
+                modules.add(link.getFileName().toString());
+        } catch (IOException e) {
+            /* Not a package of the platform modules */
+            modules = Collections.emptyList();
+        }
+        packageModules.put(packageName, modules);
+        return modules;
+    }
+
+    /**
+     * Return the contents of the class file of the named class,
+     * or null if the image does not contain it.
+     */
+    byte[] readClass(String className) throws IOException {
+        String path = className.replace('.', '/');
+        int slash = path.lastIndexOf('/');
+        if (slash == -1)
+            return null;
+        for (String module : getModules(path.substring(0, slash))) {
+            try {
+                return Files.readAllBytes(fileSystem.getPath("/modules", module, path + ".class"));
+            } catch (NoSuchFileException e) {
+                /* A package split among modules */
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the name of the superclass of the named class, or null
+     * if the image does not contain the class.
+     * Only the start of the class file, up to its superclass, is parsed.
+     */
+    String getSuperclassName(String className) {
+        try {
+            byte[] classBytes = readClass(className);
+            return classBytes == null ? null : superclassName(classBytes);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return the superclass name recorded in the specified class file.
+     * The constant pool is skipped over, recording only the positions
+     * of its entries, and just the superclass name is decoded.
+     */
+    static String superclassName(byte[] classBytes) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(classBytes);
+        if (in.getInt() != 0xCAFEBABE)
+            throw new IOException("Not a class file");
+        in.position(8);
+        int count = in.getShort() & 0xffff;
+        int[] offsets = new int[count];
+        for (int i = 1; i < count; i++) {
+            offsets[i] = in.position();
+            int tag = in.get();
+            switch (tag) {
+            case 1:     /* Utf8 */
+                in.position(in.position() + 2 + (in.getShort(in.position()) & 0xffff));
+                break;
+            case 7:     /* Class */
+            case 8:     /* String */
+            case 16:    /* MethodType */
+            case 19:    /* Module */
+            case 20:    /* Package */
+                in.position(in.position() + 2);
+                break;
+            case 15:    /* MethodHandle */
+                in.position(in.position() + 3);
+                break;
+            case 3:     /* Integer */
+            case 4:     /* Float */
+            case 9:     /* Fieldref */
+            case 10:    /* Methodref */
+            case 11:    /* InterfaceMethodref */
+            case 12:    /* NameAndType */
+            case 17:    /* Dynamic */
+            case 18:    /* InvokeDynamic */
+                in.position(in.position() + 4);
+                break;
+            case 5:     /* Long */
+            case 6:     /* Double */
+                in.position(in.position() + 8);
+                /* Eight-byte constants take two entries */
+                i++;
+                break;
+            default:
+                throw new IOException("Invalid constant pool tag " + tag);
+            }
+        }
+        /* Skip the access flags and this class */
+        int superclass = in.getShort(in.position() + 4) & 0xffff;
+        /* Only java.lang.Object has no superclass */
+        if (superclass == 0)
+            return "java.lang.Object";
+        int name = in.getShort(offsets[superclass] + 1) & 0xffff;
+        int offset = offsets[name] + 1;
+        DataInputStream utf8 = new DataInputStream(new ByteArrayInputStream(classBytes, offset, classBytes.length - offset));
+        return utf8.readUTF().replace('/', '.');
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A container that keeps the memory used for the classes that are
+ * only referenced within a budget.
+ * Only the visited classes get their metrics; referenced classes are
+ * just names in the symbol table, with their number of children.
+ * The coupling edges are collected in a buffer that grows up to
+ * a size bounded by the budget; whenever it fills at that size, the
+ * edges are sorted and appended as a run to an edge log on disk.
+ * Before the metrics are printed the runs are merged, counting the
+ * distinct afferent couplings of each class.
+ *
+ * @see AnalysisSession#setMemoryBudget
+ */
+class SpillingMetricsContainer extends ClassMetricsContainer {
+    /** Size of the buffers through which runs are written and read */
+    private static final int IO_BUFFER = 64 * 1024;
+    /** Smallest number of edges buffered before spilling them to disk */
+    private static final int MIN_EDGES = 1024;
+    /** Initial size of the edge buffer, which grows up to its budget */
+    private static final int INITIAL_EDGES = 4096;
+
+    /** The budget in bytes for the edges held in memory */
+    private final long memoryBudget;
+    /** Number of children, indexed by class identifier */
+    private int[] noc = new int[256];
+    /** Coupling edges: the target's identifier in the high and the source's in the low word */
+    private long[] edges;
+    /** Number of edges that can be buffered within the budget */
+    private final int maxEdges;
+    /** Number of buffered coupling edges */
+    private int edgeCount;
+    /** The edge log, or null before the first spill */
+    private File logFile;
+    /** The channel through which runs are appended to the edge log */
+    private FileChannel log;
+    /** Positions of the runs' starts in the edge log, followed by its end */
+    private final List<Long> runStarts = new ArrayList<>();
+    /** True once the afferent couplings and children have been counted */
+    private boolean counted;
+
+    /**
+     * Create a container keeping its coupling edges in about the specified
+     * number of bytes; the edges beyond them are spilled to disk.
+     */
+    SpillingMetricsContainer(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        maxEdges = (int)Math.min(Integer.MAX_VALUE - 8, Math.max(MIN_EDGES, memoryBudget / 2 / 8));
+        edges = new long[Math.min(INITIAL_EDGES, maxEdges)];
+    }
+
+    /** Record the class's metrics, its children, and its coupling edges. */
+    @Override
+    synchronized void addResult(ClassResult result, int dit) {
+        if (counted)
+            throw new IllegalStateException("The metrics have already been printed");
+        addOwnMetrics(result, dit);
+        addToPackage(result);
+
+        SymbolTable symbols = getSymbols();
+        int classId = symbols.intern(result.getClassName());
+        int superId = symbols.intern(result.getSuperclassName());
+        if (superId >= noc.length)
+            noc = Arrays.copyOf(noc, Math.max(superId + 1, noc.length * 2));
+        noc[superId]++;
+        for (String name : result.getEfferentCoupledClasses()) {
+            if (edgeCount == edges.length) {
+                /* Allocate the budget only as the edges need it */
+                if (edges.length < maxEdges)
+                    edges = Arrays.copyOf(edges, (int)Math.min(maxEdges, 2L * edges.length));
+                else
+                    spill();
+            }
+            edges[edgeCount++] = (long)symbols.intern(name) << 32 | classId;
+        }
+    }
+
+    /** Append the buffered edges, sorted and without duplicates, to the edge log. */
+    private void spill() {
+        try {
+            if (log == null) {
+                logFile = File.createTempFile("ckjm", ".edges");
+                logFile.deleteOnExit();
+                log = FileChannel.open(logFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            Arrays.sort(edges, 0, edgeCount);
+            runStarts.add(log.position());
+            ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER);
+            for (int i = 0; i < edgeCount; i++) {
+                if (i > 0 && edges[i] == edges[i - 1])
+                    continue;
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining())
+                        log.write(buffer);
+                    buffer.clear();
+                }
+                buffer.putLong(edges[i]);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining())
+                log.write(buffer);
+            edgeCount = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** A cursor over the edges of a run in the edge log */
+    private static final class Run {
+        /** The edge log */
+        private final FileChannel log;
+        /** The edges read ahead */
+        private final ByteBuffer buffer;
+        /** Position in the edge log of the edges following the buffer's */
+        private long position;
+        /** Position in the edge log of the run's end */
+        private final long end;
+        /** The edge at the cursor */
+        long edge;
+
+        Run(FileChannel log, long start, long end, int bufferSize) {
+            this.log = log;
+            this.position = start;
+            this.end = end;
+            buffer = ByteBuffer.allocate(bufferSize);
+            buffer.flip();
+        }
+
+        /** Advance to the next edge; return false at the run's end. */
+        boolean next() throws IOException {
+            if (!buffer.hasRemaining()) {
+                if (position == end)
+                    return false;
+                buffer.clear();
+                buffer.limit((int)Math.min(buffer.capacity(), end - position));
+                while (buffer.hasRemaining()) {
+                    int n = log.read(buffer, position);
+                    if (n < 0)
+                        throw new EOFException("Truncated edge log");
+                    position += n;
+                }
+                buffer.flip();
+            }
+            edge = buffer.getLong();
+            return true;
+        }
+    }
+
+    /**
+     * Count the afferent couplings of each class by merging the runs
+     * of the edge log, and add them and the number of children to
+     * the metrics of the visited classes.
+     */
+    private void count() throws IOException {
+        SymbolTable symbols = getSymbols();
+        int[] ca = new int[symbols.size()];
+        if (log == null) {
+            Arrays.sort(edges, 0, edgeCount);
+            for (int i = 0; i < edgeCount; i++)
+                if (i == 0 || edges[i] != edges[i - 1])
+                    ca[(int)(edges[i] >>> 32)]++;
+        } else {
+            if (edgeCount > 0)
+                spill();
+            runStarts.add(log.position());
+            int runs = runStarts.size() - 1;
+            /* Keep the read buffers within the budget, in whole edges */
+            int bufferSize = (int)Math.max(8, Math.min(IO_BUFFER, memoryBudget / 2 / runs) & ~7);
+            PriorityQueue<Run> queue = new PriorityQueue<>(runs, (a, b) -> Long.compare(a.edge, b.edge));
+            for (int i = 0; i < runs; i++) {
+                Run run = new Run(log, runStarts.get(i), runStarts.get(i + 1), bufferSize);
+                if (run.next())
+                    queue.add(run);
+            }
+            long previous = -1;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                if (run.edge != previous) {
+                    ca[(int)(run.edge >>> 32)]++;
+                    previous = run.edge;
+                }
+                if (run.next())
+                    queue.add(run);
+            }
+            log.close();
+            logFile.delete();
+        }
+
+        for (int id = 0; id < ca.length; id++) {
+            int children = id < noc.length ? noc[id] : 0;
+            if (ca[id] == 0 && children == 0)
+                continue;
+            ClassMetrics classMetrics = getVisitedMetrics(symbols.getName(id));
+            if (classMetrics != null) {
+                classMetrics.addCa(ca[id]);
+                classMetrics.addNoc(children);
+            }
+        }
+    }
+
+    /** Print the metrics of all the visited classes, after counting their couplings. */
+    @Override
+    public synchronized void printMetrics(CkjmOutputHandler outputHandler, boolean includeAll) {
+        if (!counted) {
+            try {
+                count();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            counted = true;
+        }
+        super.printMetrics(outputHandler, includeAll);
+    }
+
+    /** Results cannot be withdrawn from the couplings spilled to disk. */
+    @Override
+    void removeResult(ClassResult result) {
+        throw new UnsupportedOperationException("Spilled results cannot be withdrawn");
+    }
+}
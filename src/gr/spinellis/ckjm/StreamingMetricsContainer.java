@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A container that hands the metrics of each class to a streaming
+ * output handler as soon as the class's result is added, instead
+ * of keeping them until the end.
+ * For the metrics that depend on other classes it retains only
+ * the number of children of each class and a log of the
+ * coupling edges, both indexed through the symbol table.
+ * The afferent couplings are counted from the sorted log
+ * when the output is finished.
+ *
+ * @see CkjmStreamingOutputHandler
+ */
+class StreamingMetricsContainer extends ClassMetricsContainer {
+    /** The handler receiving the metrics */
+    private final CkjmStreamingOutputHandler outputHandler;
+    /** True to output non-public classes as well */
+    private final boolean includeAll;
+    /** Number of children, indexed by class identifier */
+    private int[] noc = new int[256];
+    /** Identifiers of the visited classes */
+    private final BitSet visited = new BitSet();
+    /** Identifiers of the public classes */
+    private final BitSet isPublic = new BitSet();
+    /** Coupling edges: the target's identifier in the high and the source's in the low word */
+    private long[] edges = new long[1024];
+    /** Number of coupling edges */
+    private int edgeCount;
+
+    /**
+     * Create a container that outputs to the specified handler.
+     * @param includeAll True to output non-public classes as well
+     */
+    StreamingMetricsContainer(CkjmStreamingOutputHandler outputHandler, boolean includeAll) {
+        this.outputHandler = outputHandler;
+        this.includeAll = includeAll;
+    }
+
+    /** Output the class's own metrics, and record the rest. */
+    @Override
+    synchronized void addResult(ClassResult result, int dit) {
+        SymbolTable symbols = getSymbols();
+        int classId = symbols.intern(result.getClassName());
+        int superId = symbols.intern(result.getSuperclassName());
+
+        visited.set(classId);
+        addToPackage(result);
+        if (result.isPublic())
+            isPublic.set(classId);
+        if (superId >= noc.length)
+            noc = Arrays.copyOf(noc, Math.max(superId + 1, noc.length * 2));
+        noc[superId]++;
+        for (String name : result.getEfferentCoupledClasses()) {
+            if (edgeCount == edges.length)
+                edges = Arrays.copyOf(edges, edgeCount * 2);
+            edges[edgeCount++] = (long)symbols.intern(name) << 32 | classId;
+        }
+
+        if (includeAll || result.isPublic()) {
+            ClassMetrics classMetrics = new ClassMetrics();
+            classMetrics.addWmc(result.getWmc());
+            classMetrics.addNpm(result.getNpm());
+            if (dit != HierarchyIndex.UNRESOLVED)
+                classMetrics.setDit(dit);
+            classMetrics.setCbo(result.getEfferentCoupledClasses().length);
+            classMetrics.setRfc(result.getRfc());
+            classMetrics.setLcom(result.getLcom());
+            outputHandler.handleOwnMetrics(result.getClassName(), classMetrics);
+        }
+    }
+
+    /**
+     * Output the number of children and afferent couplings of
+     * the visited classes, ordered by class name.
+     */
+    synchronized void finish() {
+        SymbolTable symbols = getSymbols();
+        int[] ca = new int[symbols.size()];
+        Arrays.sort(edges, 0, edgeCount);
+        for (int i = 0; i < edgeCount; i++)
+            if (i == 0 || edges[i] != edges[i - 1])
+                ca[(int)(edges[i] >>> 32)]++;
+        edges = null;
+
+        Integer[] ids = new Integer[symbols.size()];
+        int n = 0;
+        for (int id = visited.nextSetBit(0); id >= 0; id = visited.nextSetBit(id + 1))
+            if (includeAll || isPublic.get(id))
+                ids[n++] = id;
+        Arrays.sort(ids, 0, n, (a, b) -> symbols.getName(a).compareTo(symbols.getName(b)));
+        for (int i = 0; i < n; i++) {
+            int id = ids[i];
+            outputHandler.handleCrossMetrics(symbols.getName(id), id < noc.length ? noc[id] : 0, ca[id]);
+        }
+    }
+
+    /** The metrics have already been output by addResult. */
+    @Override
+    public void printMetrics(CkjmOutputHandler outputHandler, boolean includeAll) {
+        throw new UnsupportedOperationException("Streaming output is finished through finish");
+    }
+
+    /** Results cannot be withdrawn from the streamed output. */
+    @Override
+    void removeResult(ClassResult result) {
+        throw new UnsupportedOperationException("Streamed results cannot be withdrawn");
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package gr.spinellis.ckjm;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of interned names, such as fully qualified class names.
+ * Each distinct name is given a small integer identifier, allocated
+ * in sequence from 0, so that sets of names can be stored as IntSets.
+ * Names can be interned and looked up concurrently.
+ *
+ * @see IntSet
+ */
+class SymbolTable {
+    /** Map from names to their identifiers */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    /** The names, indexed by their identifier */
+    private volatile String[] names = new String[256];
+    /** Number of interned names */
+    private int size;
+
+    /** Return the identifier of the specified name, allocating one if needed. */
+    int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null)
+            return id;
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null)
+                return id;
+            if (size == names.length)
+                names = Arrays.copyOf(names, size * 2);
+            names[size] = name;
+            id = size++;
+            /* Publish the identifier after its name */
+            ids.put(name, id);
+            return id;
+        }
+    }
+
+    /** Return the name with the specified identifier. */
+    String getName(int id) {
+        return names[id];
+    }
+
+    /** Return the number of interned names. */
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package gr.spinellis.ckjm;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The changes of each metric beyond which a class is reported as
+ * changed with respect to a baseline.
+ * A threshold is either an absolute difference or a percentage of
+ * the baseline's value; a metric changes beyond it if the difference
+ * exceeds it.
+ *
+ * @see BaselineDiff
+ */
+class Thresholds {
+    /** Value of a metric that is not compared */
+    private static final int IGNORED = -1;
+
+    /** The threshold of each metric, in the order of Metric, or IGNORED */
+    private final int[] limits = new int[Metric.values().length];
+    /** True for the metrics whose threshold is a percentage */
+    private final boolean[] percent = new boolean[Metric.values().length];
+
+    /** Return thresholds reporting any change of any metric. */
+    static Thresholds anyChange() {
+        return new Thresholds();
+    }
+
+    /**
+     * Parse a comma-separated list of thresholds, such as
+     * <code>wmc=2,rfc=10%</code>; only the listed metrics are compared.
+     * @throws IllegalArgumentException if the list is invalid
+     */
+    static Thresholds parse(String spec) {
+        Thresholds thresholds = new Thresholds();
+        Arrays.fill(thresholds.limits, IGNORED);
+        for (String item : spec.split(",")) {
+            int equals = item.indexOf('=');
+            if (equals == -1)
+                throw new IllegalArgumentException("Invalid threshold: " + item);
+            Metric metric;
+            try {
+                metric = Metric.valueOf(item.substring(0, equals).trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown metric in threshold: " + item);
+            }
+            String value = item.substring(equals + 1).trim();
+            if (value.endsWith("%")) {
+                thresholds.percent[metric.ordinal()] = true;
+                value = value.substring(0, value.length() - 1);
+            }
+            int limit;
+            try {
+                limit = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                limit = IGNORED;
+            }
+            if (limit < 0)
+                throw new IllegalArgumentException("Invalid threshold: " + item);
+            thresholds.limits[metric.ordinal()] = limit;
+        }
+        return thresholds;
+    }
+
+    /** Return true if the metric's change from the baseline value exceeds its threshold. */
+    boolean exceeded(Metric metric, int baseline, int current) {
+        int limit = limits[metric.ordinal()];
+        if (limit == IGNORED || baseline == current)
+            return false;
+        long difference = Math.abs((long)current - baseline);
+        if (percent[metric.ordinal()])
+            return difference * 100 > (long)limit * Math.abs(baseline);
+        return difference > limit;
+    }
+}
@@ -16,22 +16,38 @@
 
 package gr.spinellis.ckjm.ant;
 
-import gr.spinellis.ckjm.MetricsFilter;
+import gr.spinellis.ckjm.AnalysisSession;
+import gr.spinellis.ckjm.HierarchyIndex;
 import gr.spinellis.ckjm.PrintPlainResults;
+import gr.spinellis.ckjm.ResultCache;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.apache.bcel.util.ClassPath;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.MatchingTask;
 import org.apache.tools.ant.types.Path;
 
 /**
  * Ant task definition for the CKJM metrics tool.
+ * The superclasses of the analyzed classes are looked up in the
+ * task's own class path, so that tasks running in parallel builds
+ * do not affect each other.
+ * The task is skipped if its output file is newer than the class
+ * files and the files of the class path, and was written with the
+ * same configuration and class files, as recorded in a stamp file
+ * next to it.
  *
  * @version $Revision: 1.3 $
  * @author Julien Rentrop
@@ -43,8 +59,14 @@ public class CkjmTask extends MatchingTask {
 
     private Path extdirs;
 
+    private Path classpath;
+
     private String format;
 
+    private int threads = 1;
+
+    private File cacheFile;
+
     public CkjmTask() {
         this.format = "plain";
     }
@@ -112,6 +134,145 @@ public class CkjmTask extends MatchingTask {
         return extdirs.createPath();
     }
 
+    /**
+     * Sets the class path in which the superclasses of the analyzed
+     * classes are looked up, in addition to the jar files of extdirs.
+     * @param c a path of jar files and class directories
+     */
+    public void setClasspath(Path c) {
+        if (classpath == null) {
+            classpath = c;
+        } else {
+            classpath.append(c);
+        }
+    }
+
+    /**
+     * Adds a path to the class path.
+     * @return a path to be modified
+     */
+    public Path createClasspath() {
+        if (classpath == null) {
+            classpath = new Path(getProject());
+        }
+        return classpath.createPath();
+    }
+
+    /**
+     * Sets the number of threads analyzing the classes.
+     *
+     * @param threads
+     *            the number of threads, or 0 for one per processor.
+     *            Default is 1.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the file of the per-class result cache, through which only
+     * the classes that changed since the previous run are analyzed again.
+     *
+     * @param cacheFile
+     *            Location of the cache file
+     */
+    public void setCachefile(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Return the jar files of the extension directories, followed
+     * by the elements of the class path.
+     */
+    private List<File> getDependencies() {
+        List<File> dependencies = new ArrayList<File>();
+        if (extdirs != null) {
+            for (String dir : extdirs.list()) {
+                File[] jars = new File(dir).listFiles();
+                if (jars == null)
+                    continue;
+                Arrays.sort(jars);
+                for (File jar : jars)
+                    if (jar.getName().endsWith(".jar") || jar.getName().endsWith(".zip"))
+                        dependencies.add(jar);
+            }
+        }
+        if (classpath != null) {
+            for (String element : classpath.list())
+                dependencies.add(new File(element));
+        }
+        return dependencies;
+    }
+
+    /**
+     * Return the file recording the configuration and the class files
+     * with which the output file was written.
+     */
+    private File getStampFile() {
+        return new File(outputFile.getPath() + ".stamp");
+    }
+
+    /**
+     * Return a description of the task's configuration affecting its
+     * output and of the specified class files, to be recorded in
+     * the stamp file.
+     */
+    private String getStamp(String[] files, List<File> dependencies) {
+        StringBuilder stamp = new StringBuilder();
+        stamp.append("format ").append(format).append('\n');
+        stamp.append("classdir ").append(classDir.getAbsolutePath()).append('\n');
+        for (File dependency : dependencies)
+            stamp.append("dependency ").append(dependency.getAbsolutePath()).append('\n');
+        String[] sorted = files.clone();
+        Arrays.sort(sorted);
+        for (String file : sorted)
+            stamp.append("class ").append(file).append('\n');
+        return stamp.toString();
+    }
+
+    /**
+     * Return true if the file, or a file under it if it is a directory,
+     * has been modified at or after the specified time.
+     */
+    private static boolean isModifiedSince(File file, long time) {
+        if (file.lastModified() >= time)
+            return true;
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                if (isModifiedSince(child, time))
+                    return true;
+        return false;
+    }
+
+    /**
+     * Return true if the output file was written with the specified
+     * stamp and is newer than all the specified files and directories,
+     * and the files of the dependencies; a directory changes when
+     * files are removed from it.
+     */
+    private boolean isUpToDate(String[] files, String[] dirs, List<File> dependencies, String stamp) {
+        if (outputFile == null || !outputFile.exists())
+            return false;
+        try {
+            if (!new String(Files.readAllBytes(getStampFile().toPath()), StandardCharsets.UTF_8).equals(stamp))
+                return false;
+        } catch (IOException e) {
+            return false;
+        }
+        long outputTime = outputFile.lastModified();
+        for (String file : files)
+            if (new File(classDir, file).lastModified() >= outputTime)
+                return false;
+        for (String dir : dirs)
+            if (new File(classDir, dir).lastModified() >= outputTime)
+                return false;
+        for (File dependency : dependencies)
+            if (isModifiedSince(dependency, outputTime))
+                return false;
+        return true;
+    }
+
     /**
      * Executes the CKJM Ant Task. This method redirects the output of the CKJM
      * tool to a file. When XML format is used it will buffer the output and
@@ -131,47 +292,67 @@ public class CkjmTask extends MatchingTask {
             throw new BuildException("classdir is not a directory!");
         }
 
-	if (extdirs != null && extdirs.size() > 0) {
-	    if (System.getProperty("java.ext.dirs").length() == 0)
-		System.setProperty("java.ext.dirs", extdirs.toString());
-	    else
-		System.setProperty("java.ext.dirs",
-		    System.getProperty("java.ext.dirs") + File.pathSeparator +
-		    extdirs);
-	}
-
         DirectoryScanner ds = super.getDirectoryScanner(classDir);
 
         String files[] = ds.getIncludedFiles();
         if (files.length == 0) {
             log("No class files in specified directory " + classDir);
-        } else {
-            for (int i = 0; i < files.length; i++) {
-                files[i] = classDir.getPath() + File.separatorChar + files[i];
-            }
+            return;
+        }
+        List<File> dependencies = getDependencies();
+        String stamp = getStamp(files, dependencies);
+        if (isUpToDate(files, ds.getIncludedDirectories(), dependencies, stamp)) {
+            log(outputFile + " is up to date", Project.MSG_VERBOSE);
+            return;
+        }
 
-            try {
-                OutputStream outputStream = new FileOutputStream(outputFile);
+        StringBuilder path = new StringBuilder(ClassPath.getClassPath());
+        for (File dependency : dependencies)
+            path.append(File.pathSeparatorChar).append(dependency.getPath());
+        AnalysisSession session = new AnalysisSession(false, false,
+                HierarchyIndex.forClassPath(path.toString()));
+        session.setThreads(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        ResultCache cache = null;
+        if (cacheFile != null) {
+            cache = new ResultCache(cacheFile, false);
+            session.setResultCache(cache);
+        }
 
-                if (format.equals("xml")) {
-                    PrintXmlResults outputXml = new PrintXmlResults(
-                            new PrintStream(outputStream));
+        List<String> classSpecs = new ArrayList<String>(files.length);
+        for (int i = 0; i < files.length; i++) {
+            classSpecs.add(classDir.getPath() + File.separatorChar + files[i]);
+        }
+        session.processClasses(classSpecs);
 
-                    outputXml.printHeader();
-                    MetricsFilter.runMetrics(files, outputXml);
-                    outputXml.printFooter();
-                } else {
-                    PrintPlainResults outputPlain = new PrintPlainResults(
-                            new PrintStream(outputStream));
-                    MetricsFilter.runMetrics(files, outputPlain);
-                }
+        try {
+            if (cache != null) {
+                cache.save();
+            }
 
-                outputStream.close();
+            /* An interrupted run must not leave a valid stamp */
+            File stampFile = getStampFile();
+            Files.deleteIfExists(stampFile.toPath());
+            OutputStream outputStream = new FileOutputStream(outputFile);
 
-            } catch (IOException ioe) {
-                throw new BuildException("Error file handling: "
-                        + ioe.getMessage());
+            if (format.equals("xml")) {
+                PrintXmlResults outputXml = new PrintXmlResults(
+                        new PrintStream(outputStream));
+
+                outputXml.printHeader();
+                session.printMetrics(outputXml);
+                outputXml.printFooter();
+            } else {
+                PrintPlainResults outputPlain = new PrintPlainResults(
+                        new PrintStream(outputStream));
+                session.printMetrics(outputPlain);
             }
+
+            outputStream.close();
+            Files.write(stampFile.toPath(), stamp.getBytes(StandardCharsets.UTF_8));
+
+        } catch (IOException ioe) {
+            throw new BuildException("Error file handling: "
+                    + ioe.getMessage());
         }
     }
 }
@@ -0,0 +1,125 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class AnalysisServerTest {
+
+	private static final String JAR = "test/ckjm-1.8.jar";
+
+	private static String readResponse(BufferedReader in) throws IOException {
+		StringBuilder response = new StringBuilder();
+		String line;
+		while ((line = in.readLine()) != null && !line.isEmpty())
+			response.append(line).append('\n');
+		return response.toString();
+	}
+
+	/** Start serving requests in a new thread. */
+	private static void startServing(AnalysisServer server) {
+		Thread serving = new Thread(() -> {
+			try {
+				server.serve();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		serving.start();
+	}
+
+	/** Send a request of the specified lines and return its response. */
+	private static String request(PrintStream out, BufferedReader in, String... lines) throws IOException {
+		for (String line : lines)
+			out.print(line + "\n");
+		out.print("\n");
+		out.flush();
+		return readResponse(in);
+	}
+
+	@Test
+	public void servesRepeatedRequests() throws Exception {
+		final StringBuilder expected = new StringBuilder();
+		AnalysisSession session = new AnalysisSession(false, true);
+		session.processClasses(Collections.singletonList(JAR));
+		session.printMetrics((name, c) -> expected.append(name).append(' ').append(c).append('\n'));
+
+		try (AnalysisServer server = new AnalysisServer(0)) {
+			startServing(server);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			     PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8")) {
+				for (int i = 0; i < 2; i++)
+					assertEquals(expected.toString(), request(out, in, "-p", JAR));
+				assertTrue(request(out, in, "-x").startsWith("error:"));
+			}
+		}
+	}
+
+	@Test
+	public void rejectsOptionsWritingFiles() throws Exception {
+		File file = File.createTempFile("ckjm", ".out");
+		assertTrue(file.delete());
+		try (AnalysisServer server = new AnalysisServer(0)) {
+			startServing(server);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			     PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8")) {
+				for (String option : new String[] { "-w", "-b", "-c", "-a", "-m" })
+					assertTrue(option, request(out, in, "-p", option, file.getPath(), JAR).startsWith("error:"));
+				assertTrue(request(out, in, "-s", "merge", JAR).startsWith("error:"));
+				assertTrue(request(out, in, "-d", "0").startsWith("error:"));
+			}
+		}
+		assertFalse(file.exists());
+	}
+
+	@Test
+	public void repliesToMalformedClasses() throws Exception {
+		File file = File.createTempFile("ckjm", ".class");
+		file.deleteOnExit();
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			/* A class file with an invalid constant pool tag */
+			out.write(new byte[] { (byte)0xca, (byte)0xfe, (byte)0xba, (byte)0xbe, 0, 0, 0, 0x34, 0, 2, (byte)0xff, 0, 0, 0 });
+		}
+		try (AnalysisServer server = new AnalysisServer(0)) {
+			startServing(server);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			     PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8")) {
+				assertTrue(request(out, in, file.getPath()).startsWith("error:"));
+				/* The connection is still served */
+				assertFalse(request(out, in, "-p", JAR).isEmpty());
+			}
+		}
+	}
+
+	@Test
+	public void servesStatistics() throws Exception {
+		try (AnalysisServer server = new AnalysisServer(0)) {
+			startServing(server);
+			try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+			     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			     PrintStream out = new PrintStream(socket.getOutputStream(), true, "UTF-8")) {
+				assertTrue(request(out, in, AnalysisServer.STATISTICS_REQUEST).contains("\nckjm_classes_total 0\n"));
+				request(out, in, JAR);
+				String statistics = request(out, in, AnalysisServer.STATISTICS_REQUEST);
+				assertTrue(statistics.contains("ckjm_phase_total{phase=\"parse\"}"));
+				assertFalse(statistics.contains("\nckjm_classes_total 0\n"));
+			}
+		}
+	}
+}
@@ -0,0 +1,428 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Test;
+
+public class AnalysisSessionTest {
+
+	private static final String JAR = "test/ckjm-1.8.jar";
+
+	private static String analyze(boolean includeJdk, boolean onlyPublic) {
+		return analyze(includeJdk, onlyPublic, null);
+	}
+
+	private static String analyze(boolean includeJdk, boolean onlyPublic, ResultCache cache) {
+		final StringBuilder out = new StringBuilder();
+		AnalysisSession session = new AnalysisSession(includeJdk, onlyPublic);
+		session.setResultCache(cache);
+		session.processClasses(Collections.singletonList(JAR));
+		session.printMetrics((name, c) -> out.append(name).append(' ').append(c).append('\n'));
+		return out.toString();
+	}
+
+	@Test
+	public void concurrentSessionsDoNotInterfere() throws Exception {
+		String all = analyze(false, false);
+		String publicOnly = analyze(false, true);
+		String withJdk = analyze(true, false);
+		assertTrue(publicOnly.length() < all.length());
+
+		ExecutorService pool = Executors.newFixedThreadPool(3);
+		try {
+			for (int i = 0; i < 4; i++) {
+				Future<String> a = pool.submit((Callable<String>) () -> analyze(false, false));
+				Future<String> p = pool.submit((Callable<String>) () -> analyze(false, true));
+				Future<String> s = pool.submit((Callable<String>) () -> analyze(true, false));
+				assertEquals(all, a.get());
+				assertEquals(publicOnly, p.get());
+				assertEquals(withJdk, s.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void cachedRunMatchesColdRun() throws Exception {
+		File file = File.createTempFile("ckjm", ".cache");
+		try {
+			file.delete();
+			String cold = analyze(false, false);
+
+			ResultCache cache = new ResultCache(file, false);
+			assertEquals(cold, analyze(false, false, cache));
+			assertEquals(0, cache.getHits());
+			cache.save();
+
+			cache = new ResultCache(file, false);
+			assertEquals(cold, analyze(false, false, cache));
+			assertEquals(0, cache.getMisses());
+			assertTrue(cache.getHits() > 0);
+
+			/* Results obtained with other options are not reused */
+			cache = new ResultCache(file, true);
+			assertEquals(analyze(true, false), analyze(true, false, cache));
+			assertEquals(0, cache.getHits());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void sharedCacheKeepsUnusedResults() throws Exception {
+		File file = File.createTempFile("ckjm", ".cache");
+		try {
+			file.delete();
+			ResultCache cache = new ResultCache(file, false);
+			analyze(false, false, cache);
+			cache.save();
+
+			/* Analyze other classes, as in another module */
+			cache = new ResultCache(file, false);
+			cache.setShared(true);
+			AnalysisSession session = new AnalysisSession();
+			session.setResultCache(cache);
+			session.processClass("target/classes/gr/spinellis/ckjm/ClassMetrics.class");
+			cache.save();
+
+			cache = new ResultCache(file, false);
+			analyze(false, false, cache);
+			assertEquals(0, cache.getMisses());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void streamingOutputMatchesPrintedMetrics() {
+		final Map<String, String> own = new TreeMap<>();
+		final StringBuilder out = new StringBuilder();
+		AnalysisSession session = new AnalysisSession();
+		session.setStreamingOutput(new CkjmStreamingOutputHandler() {
+			@Override
+			public void handleOwnMetrics(String name, ClassMetrics c) {
+				own.put(name, c.getWmc() + " " + c.getDit() + " %d " + c.getCbo() + " " +
+					c.getRfc() + " " + c.getLcom() + " %d " + c.getNpm());
+			}
+
+			@Override
+			public void handleCrossMetrics(String name, int noc, int ca) {
+				out.append(name).append(' ').append(String.format(own.get(name), noc, ca)).append('\n');
+			}
+		});
+		session.processClasses(Collections.singletonList(JAR));
+		session.finishStreamingOutput();
+		assertEquals(analyze(false, false), out.toString());
+	}
+
+	@Test
+	public void mergedShardsMatchSingleRun() throws Exception {
+		final int shards = 3;
+		File[] files = new File[shards];
+		try {
+			for (int i = 0; i < shards; i++) {
+				files[i] = File.createTempFile("ckjm", ".ckjp");
+				AnalysisSession session = new AnalysisSession();
+				session.setShard(i, shards);
+				try (PartialResults partial = new PartialResults(files[i], false)) {
+					session.setPartialResults(partial);
+					session.processClasses(Collections.singletonList(JAR));
+				}
+			}
+
+			final StringBuilder out = new StringBuilder();
+			AnalysisSession merged = new AnalysisSession();
+			for (File file : files)
+				merged.mergePartialResults(file);
+			merged.printMetrics((name, c) -> out.append(name).append(' ').append(c).append('\n'));
+			assertEquals(analyze(false, false), out.toString());
+		} finally {
+			for (File file : files)
+				if (file != null)
+					file.delete();
+		}
+	}
+
+	@Test
+	public void truncatedPartialResultsAreNotMerged() throws Exception {
+		File file = File.createTempFile("ckjm", ".ckjp");
+		try {
+			AnalysisSession session = new AnalysisSession();
+			try (PartialResults partial = new PartialResults(file, false)) {
+				session.setPartialResults(partial);
+				session.processClasses(Collections.singletonList(JAR));
+			}
+			byte[] complete = Files.readAllBytes(file.toPath());
+			Files.write(file.toPath(), Arrays.copyOf(complete, complete.length / 2));
+
+			AnalysisSession merged = new AnalysisSession();
+			try {
+				merged.mergePartialResults(file);
+				fail("Truncated file merged");
+			} catch (IOException e) {
+				/* Expected */
+			}
+			final StringBuilder out = new StringBuilder();
+			merged.printMetrics((name, c) -> out.append(name).append('\n'));
+			assertEquals("", out.toString());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void identicalClassesAreProcessedOnce() {
+		final StringBuilder out = new StringBuilder();
+		AnalysisSession session = new AnalysisSession();
+		session.setDeduplication(true);
+		session.processClasses(Arrays.asList(JAR, JAR));
+		session.printMetrics((name, c) -> out.append(name).append(' ').append(c).append('\n'));
+		assertEquals(analyze(false, false), out.toString());
+		assertEquals(out.toString().split("\n").length, session.getDuplicates());
+	}
+
+	/** Write a jar with the specified entry names and contents to the specified file. */
+	private static void writeJar(File file, Manifest manifest, Object... entries) throws Exception {
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest)) {
+			for (int i = 0; i < entries.length; i += 2) {
+				out.putNextEntry(new JarEntry((String)entries[i]));
+				out.write((byte[])entries[i + 1]);
+			}
+		}
+	}
+
+	private static byte[] classBytes(Class<?> c) throws Exception {
+		try (InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1)
+				out.write(buffer, 0, n);
+			return out.toByteArray();
+		}
+	}
+
+	private static String analyzeRelease(String archive, int release) {
+		final StringBuilder out = new StringBuilder();
+		AnalysisSession session = new AnalysisSession();
+		session.setRelease(release);
+		session.processClasses(Collections.singletonList(archive));
+		session.printMetrics((name, c) -> out.append(name).append('\n'));
+		return out.toString();
+	}
+
+	@Test
+	public void nestedArchivesAreRead() throws Exception {
+		File jar = File.createTempFile("ckjm", ".jar");
+		File war = File.createTempFile("ckjm", ".war");
+		try {
+			writeJar(jar, new Manifest(), "BOOT-INF/lib/ckjm-1.8.jar", Files.readAllBytes(Paths.get(JAR)));
+			writeJar(war, new Manifest(), "WEB-INF/lib/app.jar", Files.readAllBytes(jar.toPath()));
+			final StringBuilder out = new StringBuilder();
+			AnalysisSession session = new AnalysisSession();
+			session.processClasses(Collections.singletonList(war.getPath()));
+			session.printMetrics((name, c) -> out.append(name).append(' ').append(c).append('\n'));
+			assertEquals(analyze(false, false), out.toString());
+		} finally {
+			jar.delete();
+			war.delete();
+		}
+	}
+
+	@Test
+	public void multiReleaseClassesAreSelected() throws Exception {
+		File jar = File.createTempFile("ckjm", ".jar");
+		try {
+			Manifest manifest = new Manifest();
+			manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+			manifest.getMainAttributes().putValue("Multi-Release", "true");
+			writeJar(jar, manifest,
+				"a/A.class", classBytes(IntSet.class),
+				"META-INF/versions/9/a/A.class", classBytes(LongSet.class),
+				"META-INF/versions/11/a/A.class", classBytes(SymbolTable.class),
+				"META-INF/versions/99/a/A.class", classBytes(ContentHash.class));
+			assertEquals("gr.spinellis.ckjm.IntSet\n", analyzeRelease(jar.getPath(), 8));
+			assertEquals("gr.spinellis.ckjm.LongSet\n", analyzeRelease(jar.getPath(), 10));
+			assertEquals("gr.spinellis.ckjm.SymbolTable\n", analyzeRelease(jar.getPath(), 17));
+
+			/* Version directories of other jars are ignored */
+			writeJar(jar, new Manifest(),
+				"a/A.class", classBytes(IntSet.class),
+				"META-INF/versions/9/a/A.class", classBytes(LongSet.class));
+			assertEquals("gr.spinellis.ckjm.IntSet\n", analyzeRelease(jar.getPath(), 17));
+		} finally {
+			jar.delete();
+		}
+	}
+
+	@Test
+	public void spilledCouplingsMatchInMemoryCounts() {
+		for (long budget : new long[] {1, 64 * 1024, 64L * 1024 * 1024, Long.MAX_VALUE}) {
+			final StringBuilder out = new StringBuilder();
+			AnalysisSession session = new AnalysisSession(true, false);
+			session.setMemoryBudget(budget);
+			session.processClasses(Arrays.asList(JAR, JAR));
+			session.printMetrics((name, c) -> out.append(name).append(' ').append(c).append('\n'));
+
+			final StringBuilder expected = new StringBuilder();
+			AnalysisSession reference = new AnalysisSession(true, false);
+			reference.processClasses(Arrays.asList(JAR, JAR));
+			reference.printMetrics((name, c) -> expected.append(name).append(' ').append(c).append('\n'));
+			assertEquals(expected.toString(), out.toString());
+		}
+	}
+
+	/** Return the package aggregates of ckjm's jar, written as plain text. */
+	private static String packageMetrics(AnalysisSession session) throws Exception {
+		session.setPackageMetrics(true);
+		session.setThreads(4);
+		session.processClasses(Collections.singletonList(JAR));
+		StringWriter out = new StringWriter();
+		session.getContainer().getPackageMetrics().writePlain(out);
+		return out.toString();
+	}
+
+	@Test
+	public void packageMetricsAggregateClassMetrics() throws Exception {
+		AnalysisSession session = new AnalysisSession();
+		String plain = packageMetrics(session);
+		final Map<String, long[]> expected = new TreeMap<>();
+		session.printMetrics((name, c) -> {
+			long[] p = expected.computeIfAbsent(PackageMetricsContainer.packageName(name), k -> new long[3]);
+			p[0]++;
+			p[1] += c.getWmc();
+			p[2] = Math.max(p[2], c.getRfc());
+		});
+
+		Map<String, PackageMetrics> packages = session.getPackageMetrics();
+		assertEquals(expected.keySet(), packages.keySet());
+		for (Map.Entry<String, long[]> entry : expected.entrySet()) {
+			PackageMetrics p = packages.get(entry.getKey());
+			assertEquals(entry.getValue()[0], p.getClasses());
+			assertEquals(entry.getValue()[1], p.getSum(Metric.WMC));
+			assertEquals((double)entry.getValue()[1] / entry.getValue()[0], p.getMean(Metric.WMC), 1e-9);
+			assertEquals(entry.getValue()[2], p.getMax(Metric.RFC));
+			assertEquals((double)p.getCe() / (p.getCa() + p.getCe()), p.getInstability(), 1e-9);
+		}
+		/* No class uses the Ant task's package, which uses the filter's */
+		assertEquals(0, packages.get("gr.spinellis.ckjm.ant").getCa());
+		assertTrue(packages.get("gr.spinellis.ckjm").getCa() >= 1);
+		assertTrue(packages.get("gr.spinellis.ckjm.ant").getCe() >= 1);
+
+		/* Streaming and spilling containers aggregate in the same way */
+		AnalysisSession streaming = new AnalysisSession();
+		streaming.setStreamingOutput(new PrintStreamingResults(new PrintStream(new ByteArrayOutputStream())));
+		assertEquals(plain, packageMetrics(streaming));
+		AnalysisSession spilling = new AnalysisSession();
+		spilling.setMemoryBudget(1);
+		assertEquals(plain, packageMetrics(spilling));
+	}
+
+	@Test
+	public void statisticsCountPhases() throws Exception {
+		AnalysisStatistics statistics = new AnalysisStatistics();
+		AnalysisSession session = new AnalysisSession();
+		session.setStatistics(statistics);
+		session.processClasses(Collections.singletonList(JAR));
+
+		long classes = statistics.getClasses();
+		assertTrue(classes > 0);
+		assertEquals(classes, statistics.getCount(AnalysisStatistics.Phase.READ));
+		assertEquals(classes, statistics.getCount(AnalysisStatistics.Phase.PARSE));
+		assertEquals(classes, statistics.getCount(AnalysisStatistics.Phase.DIT));
+		assertEquals(0, statistics.getCount(AnalysisStatistics.Phase.HASH));
+		assertTrue(statistics.getBytesRead() > 0);
+
+		StringWriter json = new StringWriter();
+		statistics.writeJson(json);
+		assertTrue(json.toString().contains("\"classes\": " + classes + ","));
+		StringWriter prometheus = new StringWriter();
+		statistics.writePrometheus(prometheus);
+		assertTrue(prometheus.toString().contains("ckjm_phase_total{phase=\"parse\"} " + classes + "\n"));
+	}
+
+	@Test
+	public void directoryReadsAreBounded() throws Exception {
+		File dir = Files.createTempDirectory("ckjm").toFile();
+		int files = 3 * AnalysisSession.PREFETCH;
+		try {
+			byte[] classBytes = classBytes(IntSet.class);
+			for (int i = 0; i < files; i++)
+				Files.write(new File(dir, "C" + i + ".class").toPath(), classBytes);
+			AnalysisStatistics statistics = new AnalysisStatistics();
+			AnalysisSession session = new AnalysisSession();
+			session.setStatistics(statistics);
+
+			/* An executor whose threads do not keep up with the reads */
+			BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+			Thread walker = new Thread(() -> session.processDirectory(dir.toPath(), tasks::add));
+			walker.start();
+			while (walker.getState() != Thread.State.WAITING && walker.isAlive())
+				Thread.sleep(10);
+			/* Let the submitted reads complete */
+			Thread.sleep(500);
+			assertTrue(statistics.getCount(AnalysisStatistics.Phase.READ) <= AnalysisSession.PREFETCH);
+
+			while (walker.isAlive() || !tasks.isEmpty()) {
+				Runnable task = tasks.poll(10, TimeUnit.MILLISECONDS);
+				if (task != null)
+					task.run();
+			}
+			assertEquals(files, statistics.getCount(AnalysisStatistics.Phase.READ));
+			assertEquals(files, statistics.getCount(AnalysisStatistics.Phase.PARSE));
+		} finally {
+			for (File file : dir.listFiles())
+				file.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void archiveEntriesAheadAreBounded() throws Exception {
+		AnalysisSession session = new AnalysisSession();
+		/* An executor whose threads do not keep up with the reads */
+		BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+		Thread reader = new Thread(() -> session.processJar(JAR, tasks::add));
+		reader.start();
+		while (reader.getState() != Thread.State.WAITING && reader.isAlive())
+			Thread.sleep(10);
+		assertTrue(tasks.size() <= AnalysisSession.PREFETCH);
+
+		while (reader.isAlive() || !tasks.isEmpty()) {
+			Runnable task = tasks.poll(10, TimeUnit.MILLISECONDS);
+			if (task != null)
+				task.run();
+		}
+		final StringBuilder out = new StringBuilder();
+		session.printMetrics((name, c) -> out.append(name).append(' ').append(c).append('\n'));
+		assertEquals(analyze(false, false), out.toString());
+	}
+}
@@ -0,0 +1,146 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BaselineDiffTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Compare an analysis of ckjm's jar with the baseline, returning the differences. */
+	private static List<String> diff(Baseline baseline, Thresholds thresholds) {
+		AnalysisSession session = new AnalysisSession();
+		session.processClasses(Collections.singletonList("test/ckjm-1.8.jar"));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintStream printStream = new PrintStream(out, true);
+		BaselineDiff diff = new BaselineDiff(baseline, thresholds, printStream);
+		session.printMetrics(diff);
+		diff.finish();
+		String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+		return text.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(text.split("\n"));
+	}
+
+	@Test
+	public void unchangedRunHasNoDifferences() throws Exception {
+		AnalysisSession session = new AnalysisSession();
+		session.processClasses(Collections.singletonList("test/ckjm-1.8.jar"));
+		final List<String> names = new ArrayList<>();
+		final List<ClassMetrics> metrics = new ArrayList<>();
+		session.printMetrics((name, c) -> { names.add(name); metrics.add(c); });
+
+		File plain = folder.newFile("baseline.txt");
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < names.size(); i++)
+			lines.add(names.get(i) + " " + metrics.get(i));
+		Files.write(plain.toPath(), lines);
+
+		File xml = folder.newFile("baseline.xml");
+		StringBuilder document = new StringBuilder("<?xml version=\"1.0\"?>\n<ckjm>\n");
+		for (int i = 0; i < names.size(); i++) {
+			document.append("<class>\n<name>").append(names.get(i)).append("</name>\n");
+			for (Metric metric : Metric.values())
+				document.append('<').append(metric.name().toLowerCase()).append('>')
+					.append(metric.get(metrics.get(i)))
+					.append("</").append(metric.name().toLowerCase()).append(">\n");
+			document.append("</class>\n");
+		}
+		document.append("</ckjm>\n");
+		Files.write(xml.toPath(), document.toString().getBytes(StandardCharsets.UTF_8));
+
+		File binary = folder.newFile("baseline.bin");
+		try (FileOutputStream out = new FileOutputStream(binary)) {
+			PrintBinaryResults writer = new PrintBinaryResults(out);
+			for (int i = 0; i < names.size(); i++)
+				writer.handleClass(names.get(i), metrics.get(i));
+			writer.finish();
+		}
+
+		for (File file : new File[] { plain, xml, binary }) {
+			Baseline baseline = Baseline.load(file);
+			assertEquals(file.getName(), names.size(), baseline.size());
+			assertEquals(file.getName(), Collections.emptyList(), diff(baseline, Thresholds.anyChange()));
+		}
+	}
+
+	@Test
+	public void changesBeyondThresholdsAreReported() throws Exception {
+		AnalysisSession session = new AnalysisSession();
+		session.processClasses(Collections.singletonList("test/ckjm-1.8.jar"));
+		final List<String> lines = new ArrayList<>();
+		session.printMetrics((name, c) -> lines.add(name + " " + c));
+		assertTrue(lines.size() > 3);
+
+		String[] changed = lines.get(0).split(" ");
+		int wmc = Integer.parseInt(changed[1]);
+		int rfc = Integer.parseInt(changed[5]);
+		/* The current WMC is one more, and the RFC far less than the baseline's */
+		changed[1] = String.valueOf(wmc - 1);
+		changed[5] = String.valueOf(rfc + 100);
+		lines.set(0, String.join(" ", changed));
+		String added = lines.remove(1).split(" ")[0];
+		lines.add("gr.spinellis.ckjm.Removed 1 1 0 0 1 0 0 1");
+		File file = folder.newFile("baseline.txt");
+		Files.write(file.toPath(), lines);
+		Baseline baseline = Baseline.load(file);
+
+		List<String> all = diff(baseline, Thresholds.anyChange());
+		assertEquals(3, all.size());
+		assertTrue(all.contains("~ " + changed[0] + " WMC " + (wmc - 1) + "->" + wmc + " RFC " + (rfc + 100) + "->" + rfc));
+		assertTrue(all.get(0).startsWith("+ " + added + " ") || all.get(1).startsWith("+ " + added + " "));
+		assertEquals("- gr.spinellis.ckjm.Removed 1 1 0 0 1 0 0 1", all.get(2));
+
+		List<String> beyond = diff(baseline, Thresholds.parse("wmc=1,rfc=10%"));
+		assertTrue(beyond.contains("~ " + changed[0] + " RFC " + (rfc + 100) + "->" + rfc));
+		assertEquals(3, beyond.size());
+
+		List<String> ignored = diff(baseline, Thresholds.parse("cbo=0"));
+		assertEquals(2, ignored.size());
+		for (String line : ignored)
+			assertFalse(line.startsWith("~"));
+	}
+
+	@Test
+	public void percentThresholdsCompareWithBaselineValue() {
+		Thresholds thresholds = Thresholds.parse("WMC=10%, lcom=3");
+		assertFalse(thresholds.exceeded(Metric.WMC, 20, 22));
+		assertTrue(thresholds.exceeded(Metric.WMC, 20, 23));
+		assertTrue(thresholds.exceeded(Metric.WMC, 0, 1));
+		assertFalse(thresholds.exceeded(Metric.LCOM, 10, 7));
+		assertTrue(thresholds.exceeded(Metric.LCOM, 10, 6));
+		assertFalse(thresholds.exceeded(Metric.RFC, 10, 100));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownMetricIsRejected() {
+		Thresholds.parse("wmc=1,xyz=2");
+	}
+
+	@Test
+	public void unreadableBaselineFailsAnalysis() throws Exception {
+		File corrupt = folder.newFile("corrupt.txt");
+		Files.write(corrupt.toPath(), "not metrics\n".getBytes(StandardCharsets.UTF_8));
+		for (File baseline : new File[] { new File(folder.getRoot(), "missing.txt"), corrupt }) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			CommandOptions options = CommandOptions.parse(Arrays.asList("-r", baseline.getPath(), "test/ckjm-1.8.jar"));
+			assertFalse(MetricsFilter.analyze(options, null, null, new PrintStream(out)));
+			assertEquals(0, out.size());
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryResultsTest {
+
+	@Test
+	public void readerReturnsWrittenMetrics() throws Exception {
+		AnalysisSession session = new AnalysisSession();
+		session.processClasses(Collections.singletonList("test/ckjm-1.8.jar"));
+		final List<String> names = new ArrayList<>();
+		final List<ClassMetrics> metrics = new ArrayList<>();
+		session.printMetrics((name, c) -> { names.add(name); metrics.add(c); });
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		PrintBinaryResults writer = new PrintBinaryResults(out);
+		/* Hand the classes in reverse order; the writer sorts them */
+		for (int i = names.size() - 1; i >= 0; i--)
+			writer.handleClass(names.get(i), metrics.get(i));
+		writer.finish();
+
+		BinaryResultsReader reader = new BinaryResultsReader(ByteBuffer.wrap(out.toByteArray()));
+		assertEquals(names.size(), reader.size());
+		long wmc = 0;
+		for (int i = 0; i < names.size(); i++) {
+			assertEquals(names.get(i), reader.getClassName(i));
+			assertEquals(i, reader.indexOf(names.get(i)));
+			for (Metric metric : Metric.values())
+				assertEquals(metric.get(metrics.get(i)), reader.get(i, metric));
+			wmc += metrics.get(i).getWmc();
+		}
+		assertEquals(wmc, reader.sum(Metric.WMC));
+		assertEquals(-1, reader.indexOf("no.such.Class"));
+		assertTrue(reader.max(Metric.RFC) > 0);
+	}
+}
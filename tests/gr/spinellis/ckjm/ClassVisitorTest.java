@@ -0,0 +1,40 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ClassVisitorTest {
+
+	private static BitSet fields(int... indices) {
+		BitSet bits = new BitSet();
+		for (int i : indices)
+			bits.set(i);
+		return bits;
+	}
+
+	@Test
+	public void lcomCountsDisjointMinusSharingPairs() {
+		List<BitSet> usage = new ArrayList<>();
+		/* The constructor and two methods of tests/Test.java */
+		usage.add(fields(0, 1, 2, 3, 4));
+		usage.add(fields(0, 1, 4));
+		usage.add(fields(5, 6, 7));
+		assertEquals(1, ClassVisitor.calculateLCOM(usage));
+	}
+
+	@Test
+	public void lcomHandlesFieldsBeyondOneWord() {
+		List<BitSet> usage = new ArrayList<>();
+		usage.add(fields(3, 130));
+		usage.add(fields(130));
+		usage.add(fields(64));
+		usage.add(new BitSet());
+		/* One sharing pair, five disjoint ones */
+		assertEquals(4, ClassVisitor.calculateLCOM(usage));
+	}
+}
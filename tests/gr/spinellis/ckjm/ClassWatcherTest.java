@@ -0,0 +1,78 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class ClassWatcherTest {
+
+	private static final Path CLASSES = Paths.get("target/classes/gr/spinellis/ckjm");
+
+	/** Return the metrics of all classes in the directory, analyzed afresh. */
+	private static Map<String, String> analyze(Path dir) {
+		final Map<String, String> metrics = new TreeMap<>();
+		AnalysisSession session = new AnalysisSession();
+		session.processClasses(Collections.singletonList(dir.toString()));
+		session.printMetrics((name, c) -> metrics.put(name, c.toString()));
+		return metrics;
+	}
+
+	/** Wait for the watcher's next update and return the metrics it output. */
+	private static Map<String, String> update(ClassWatcher watcher) throws Exception {
+		final Map<String, String> metrics = new TreeMap<>();
+		assertTrue(watcher.update((name, c) -> metrics.put(name, c.toString())));
+		return metrics;
+	}
+
+	private static void copy(String className, Path dir) throws IOException {
+		Files.copy(CLASSES.resolve(className + ".class"), dir.resolve(className + ".class"),
+			StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	@Test(timeout = 60000)
+	public void changesUpdateAffectedClasses() throws Exception {
+		Path dir = Files.createTempDirectory("ckjm");
+		try {
+			copy("IntSet", dir);
+			copy("SymbolTable", dir);
+			AnalysisSession session = new AnalysisSession();
+			try (ClassWatcher watcher = new ClassWatcher(session, Collections.singletonList(dir))) {
+				Map<String, String> all = new TreeMap<>();
+				session.printMetrics((name, c) -> all.put(name, c.toString()));
+				assertEquals(analyze(dir), all);
+
+				/* A new class coupled to the existing ones */
+				copy("ClassMetrics", dir);
+				Map<String, String> updated = update(watcher);
+				assertTrue(updated.containsKey("gr.spinellis.ckjm.ClassMetrics"));
+				assertTrue(updated.containsKey("gr.spinellis.ckjm.IntSet"));
+				all.putAll(updated);
+				assertEquals(analyze(dir), all);
+
+				/* A deleted class withdraws its couplings */
+				Files.delete(dir.resolve("ClassMetrics.class"));
+				updated = update(watcher);
+				assertTrue(updated.containsKey("gr.spinellis.ckjm.IntSet"));
+				all.putAll(updated);
+				all.remove("gr.spinellis.ckjm.ClassMetrics");
+				assertEquals(analyze(dir), all);
+			}
+		} finally {
+			try (java.util.stream.Stream<Path> files = Files.list(dir)) {
+				for (Path file : (Iterable<Path>)files::iterator)
+					Files.delete(file);
+			}
+			Files.delete(dir);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class CommandOptionsTest {
+
+	@Test
+	public void commandAfterOptions() {
+		CommandOptions options = CommandOptions.parse(Arrays.asList("-p", "merge", "a.part", "b.part"));
+		assertTrue(options.merge);
+		assertTrue(options.onlyPublic);
+		assertEquals(Arrays.asList("a.part", "b.part"), options.classSpecs);
+
+		options = CommandOptions.parse(Arrays.asList("-s", "watch", "-p", "classes"));
+		assertTrue(options.watch);
+		assertTrue(options.includeJdk);
+		assertTrue(options.onlyPublic);
+		assertEquals(Arrays.asList("classes"), options.classSpecs);
+	}
+
+	@Test
+	public void commandOnlyRecognizedOnce() {
+		CommandOptions options = CommandOptions.parse(Arrays.asList("merge", "watch"));
+		assertTrue(options.merge);
+		assertFalse(options.watch);
+		assertEquals(Arrays.asList("watch"), options.classSpecs);
+	}
+
+	@Test
+	public void commandNotRecognizedAmongClasses() {
+		CommandOptions options = CommandOptions.parse(Arrays.asList("-p", "a.class", "merge"));
+		assertFalse(options.merge);
+		assertEquals(Arrays.asList("a.class", "merge"), options.classSpecs);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void watchRejectsThreads() {
+		CommandOptions.parse(Arrays.asList("watch", "-t", "4", "classes"));
+	}
+}
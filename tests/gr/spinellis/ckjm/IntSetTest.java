@@ -0,0 +1,78 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IntSetTest {
+
+	@Test
+	public void behavesLikeHashSet() {
+		IntSet set = new IntSet();
+		Set<Integer> expected = new HashSet<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			int value = random.nextInt(200000);
+			assertEquals(expected.add(value), set.add(value));
+		}
+		assertEquals(expected.size(), set.size());
+		for (int i = 0; i < 200000; i++)
+			assertEquals(expected.contains(i), set.contains(i));
+
+		int[] values = set.toArray();
+		Arrays.sort(values);
+		assertEquals(expected.size(), values.length);
+		for (int v : values)
+			assertTrue(expected.contains(v));
+	}
+
+	@Test
+	public void removalBehavesLikeHashSet() {
+		IntSet set = new IntSet();
+		Set<Integer> expected = new HashSet<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200000; i++) {
+			int value = random.nextInt(2000);
+			if (random.nextInt(3) == 0)
+				assertEquals(expected.remove(value), set.remove(value));
+			else
+				assertEquals(expected.add(value), set.add(value));
+		}
+		assertEquals(expected.size(), set.size());
+		for (int i = 0; i < 2000; i++)
+			assertEquals(expected.contains(i), set.contains(i));
+	}
+
+	@Test
+	public void longSetBehavesLikeHashSet() {
+		LongSet set = new LongSet();
+		Set<Long> expected = new HashSet<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			long value = (long)random.nextInt(500) << 32 | random.nextInt(400);
+			assertEquals(expected.add(value), set.add(value));
+		}
+		assertEquals(expected.size(), set.size());
+		for (long v : expected)
+			assertTrue(set.contains(v));
+		assertFalse(set.contains(500L << 32));
+	}
+
+	@Test
+	public void symbolIdentifiersAreDense() {
+		SymbolTable symbols = new SymbolTable();
+		assertEquals(0, symbols.intern("a.A"));
+		assertEquals(1, symbols.intern("a.B"));
+		assertEquals(0, symbols.intern(new String("a.A")));
+		assertEquals("a.B", symbols.getName(1));
+		assertEquals(2, symbols.size());
+		assertFalse(new IntSet().contains(0));
+	}
+}
@@ -4,7 +4,15 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.concurrent.CountDownLatch;
+import java.util.stream.Stream;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -32,6 +40,59 @@ public class MetricsFilterTest {
 		assertTrue("File " + f.getAbsolutePath() + " not present", f.exists());
 		MetricsFilter.runMetrics(new String[] { f.getAbsolutePath() }, outputHandler);
 		latch.await(1, TimeUnit.SECONDS);
-		assertEquals(7, ref.get().getWmc());
+		assertEquals(9, ref.get().getWmc());
+	}
+
+	@Test
+	public void parallelRunMatchesSerialRun() {
+		File dir = new File("target/classes/gr/spinellis/ckjm");
+		List<String> files = new ArrayList<>();
+		for (File f : dir.listFiles())
+			if (f.getName().endsWith(".class"))
+				files.add(f.getAbsolutePath());
+		String[] specs = files.toArray(new String[0]);
+
+		final StringBuilder serial = new StringBuilder();
+		MetricsFilter.runMetrics(specs, (name, c) -> serial.append(name).append(' ').append(c).append('\n'));
+		final StringBuilder parallel = new StringBuilder();
+		MetricsFilter.runMetrics(specs, (name, c) -> parallel.append(name).append(' ').append(c).append('\n'), 4);
+		assertTrue(serial.length() > 0);
+		assertEquals(serial.toString(), parallel.toString());
+	}
+
+	@Test
+	public void directoryRunMatchesPerClassRun() throws Exception {
+		File dir = new File("target/classes");
+		List<String> files = new ArrayList<>();
+		try (Stream<Path> paths = Files.walk(dir.toPath())) {
+			paths.filter(p -> p.toString().endsWith(".class")).forEach(p -> files.add(p.toString()));
+		}
+
+		final StringBuilder perClass = new StringBuilder();
+		MetricsFilter.runMetrics(files.toArray(new String[0]), (name, c) -> perClass.append(name).append(' ').append(c).append('\n'));
+		final StringBuilder wholeDir = new StringBuilder();
+		MetricsFilter.runMetrics(new String[] { dir.getPath() }, (name, c) -> wholeDir.append(name).append(' ').append(c).append('\n'));
+		assertTrue(perClass.length() > 0);
+		assertEquals(perClass.toString(), wholeDir.toString());
+	}
+
+	@Test
+	public void jarRunMatchesPerClassRun() throws Exception {
+		String jar = new File("test/ckjm-1.8.jar").getPath();
+		List<String> specs = new ArrayList<>();
+		try (ZipFile zipFile = new ZipFile(jar)) {
+			for (Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements(); ) {
+				String name = e.nextElement().getName();
+				if (name.endsWith(".class"))
+					specs.add(jar + " " + name);
+			}
+		}
+
+		final StringBuilder perClass = new StringBuilder();
+		MetricsFilter.runMetrics(specs.toArray(new String[0]), (name, c) -> perClass.append(name).append(' ').append(c).append('\n'));
+		final StringBuilder wholeJar = new StringBuilder();
+		MetricsFilter.runMetrics(new String[] { jar }, (name, c) -> wholeJar.append(name).append(' ').append(c).append('\n'));
+		assertTrue(perClass.length() > 0);
+		assertEquals(perClass.toString(), wholeJar.toString());
 	}
 }
@@ -0,0 +1,55 @@
+package gr.spinellis.ckjm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.util.Collections;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.util.ClassPath;
+import org.apache.bcel.util.ClassPathRepository;
+import org.junit.Test;
+
+public class RuntimeImageTest {
+
+	@Test
+	public void superclassNamesMatchParsedClasses() throws Exception {
+		RuntimeImage image = RuntimeImage.getSystem();
+		assumeNotNull(image);
+		for (String name : new String[] {"java.lang.Object", "java.lang.String", "java.util.ArrayList",
+				"java.lang.IllegalArgumentException", "java.util.Map", "java.lang.Thread$State"}) {
+			byte[] classBytes = image.readClass(name);
+			assertNotNull(name, classBytes);
+			JavaClass javaClass = new ClassParser(new ByteArrayInputStream(classBytes), name).parse();
+			assertEquals(javaClass.getSuperclassName(), RuntimeImage.superclassName(classBytes));
+		}
+		assertNull(image.readClass("gr.spinellis.ckjm.IntSet"));
+		assertNull(image.getSuperclassName("java.lang.NoSuchClass"));
+	}
+
+	@Test
+	public void hierarchyMatchesClassPath() {
+		assumeNotNull(RuntimeImage.getSystem());
+		HierarchyIndex classPath = new HierarchyIndex(new ClassPathRepository(ClassPath.SYSTEM_CLASS_PATH));
+		HierarchyIndex image = HierarchyIndex.forSystemClassPath();
+		for (String name : new String[] {"java.lang.Object", "java.util.ArrayList", "java.lang.IllegalArgumentException",
+				"gr.spinellis.ckjm.AnalysisSession", "org.apache.bcel.classfile.JavaClass", "no.such.Class"})
+			assertEquals(name, classPath.getDepth(name), image.getDepth(name));
+	}
+
+	@Test
+	public void moduleClassesAreProcessed() {
+		assumeNotNull(RuntimeImage.getSystem());
+		final StringBuilder out = new StringBuilder();
+		AnalysisSession session = new AnalysisSession();
+		session.processClasses(Collections.singletonList("jrt:/java.logging"));
+		session.printMetrics((name, c) -> out.append(name).append(' ').append(c).append('\n'));
+		assertTrue(out.toString().contains("\njava.util.logging.Logger "));
+		assertTrue(out.toString().contains("\njava.util.logging.Level "));
+	}
+}
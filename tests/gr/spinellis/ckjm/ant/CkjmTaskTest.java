@@ -0,0 +1,133 @@
+package gr.spinellis.ckjm.ant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.MatchingTask;
+import org.apache.tools.ant.types.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CkjmTaskTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** Run a task analyzing the specified directory into the output file. */
+	private static void run(File classDir, File outputFile, File antJar) {
+		run(classDir, outputFile, "plain", antJar);
+	}
+
+	/**
+	 * Run a task analyzing the specified directory into the output
+	 * file in the specified format, with the specified class path.
+	 */
+	private static void run(File classDir, File outputFile, String format, File... classpathElements) {
+		Project project = new Project();
+		project.init();
+		CkjmTask task = new CkjmTask();
+		task.setProject(project);
+		task.setClassdir(classDir);
+		task.setOutputfile(outputFile);
+		task.setFormat(format);
+		task.setThreads(2);
+		for (File element : classpathElements) {
+			Path classpath = task.createClasspath();
+			classpath.setLocation(element);
+		}
+		task.execute();
+	}
+
+	@Test
+	public void superclassesAreFoundInTaskClassPathAndUnchangedClassesAreSkipped() throws Exception {
+		File classDir = folder.newFolder("classes");
+		File classFile = new File(classDir, "CkjmTask.class");
+		Files.copy(new File("target/classes/gr/spinellis/ckjm/ant/CkjmTask.class").toPath(), classFile.toPath());
+		File antJar = new File(MatchingTask.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		File outputFile = new File(folder.getRoot(), "ckjm.txt");
+
+		run(classDir, outputFile, antJar);
+		List<String> lines = Files.readAllLines(outputFile.toPath());
+		assertEquals(1, lines.size());
+		String[] fields = lines.get(0).split(" ");
+		assertEquals("gr.spinellis.ckjm.ant.CkjmTask", fields[0]);
+		/* MatchingTask, Task, ProjectComponent, Object */
+		assertEquals("4", fields[2]);
+
+		/* An up-to-date output file is not written again */
+		long written = classFile.lastModified() + 10000;
+		assertTrue(outputFile.setLastModified(written));
+		Files.write(outputFile.toPath(), "unchanged\n".getBytes());
+		assertTrue(outputFile.setLastModified(written));
+		run(classDir, outputFile, antJar);
+		assertEquals("unchanged", Files.readAllLines(outputFile.toPath()).get(0));
+
+		/* A recompiled class is analyzed again */
+		Files.copy(new File("target/classes/gr/spinellis/ckjm/ant/CkjmTask.class").toPath(), classFile.toPath(),
+			StandardCopyOption.REPLACE_EXISTING);
+		assertTrue(classFile.setLastModified(written + 10000));
+		run(classDir, outputFile, antJar);
+		assertEquals(lines, Files.readAllLines(outputFile.toPath()));
+	}
+
+	/** Return a directory with a copy of a class. */
+	private File classDir() throws Exception {
+		File classDir = folder.newFolder("classes");
+		Files.copy(new File("target/classes/gr/spinellis/ckjm/ant/CkjmTask.class").toPath(),
+			new File(classDir, "CkjmTask.class").toPath());
+		return classDir;
+	}
+
+	/** Mark the output file as unchanged and newer than its inputs. */
+	private static void markUnchanged(File outputFile, long time) throws Exception {
+		Files.write(outputFile.toPath(), "unchanged\n".getBytes());
+		assertTrue(outputFile.setLastModified(time));
+	}
+
+	@Test
+	public void changedFormatRunsTaskAgain() throws Exception {
+		File classDir = classDir();
+		File antJar = new File(MatchingTask.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		File outputFile = new File(folder.getRoot(), "ckjm.txt");
+
+		run(classDir, outputFile, "plain", antJar);
+		markUnchanged(outputFile, System.currentTimeMillis() + 10000);
+		run(classDir, outputFile, "plain", antJar);
+		assertEquals("unchanged", Files.readAllLines(outputFile.toPath()).get(0));
+
+		run(classDir, outputFile, "xml", antJar);
+		assertTrue(Files.readAllLines(outputFile.toPath()).get(0).startsWith("<?xml"));
+	}
+
+	@Test
+	public void changedClassPathDirectoryRunsTaskAgain() throws Exception {
+		File classDir = classDir();
+		File antJar = new File(MatchingTask.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		File libDir = folder.newFolder("lib");
+		File libClass = new File(libDir, "a/B.class");
+		assertTrue(libClass.getParentFile().mkdirs());
+		Files.write(libClass.toPath(), new byte[0]);
+		File outputFile = new File(folder.getRoot(), "ckjm.txt");
+
+		run(classDir, outputFile, "plain", antJar, libDir);
+		long written = System.currentTimeMillis() + 10000;
+		markUnchanged(outputFile, written);
+		assertTrue(libDir.setLastModified(written - 10000));
+		assertTrue(libClass.getParentFile().setLastModified(written - 10000));
+		assertTrue(libClass.setLastModified(written - 10000));
+		run(classDir, outputFile, "plain", antJar, libDir);
+		assertEquals("unchanged", Files.readAllLines(outputFile.toPath()).get(0));
+
+		/* A class recompiled in a subdirectory of the class path */
+		assertTrue(libClass.setLastModified(written + 10000));
+		run(classDir, outputFile, "plain", antJar, libDir);
+		assertTrue(Files.readAllLines(outputFile.toPath()).get(0).startsWith("gr.spinellis.ckjm.ant.CkjmTask "));
+	}
+}